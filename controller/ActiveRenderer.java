@@ -0,0 +1,174 @@
+package controller;
+
+import java.awt.BorderLayout;
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+
+import view.GraphicView;
+
+/**
+ * Draws the game on its own thread into a {@link BufferStrategy}, instead of waiting for Swing to paint.
+ * The frames are paced by this thread with a frame rate cap, the EDT is not involved at all, and the
+ * buffers are flipped as a whole, so there is no tearing.
+ * Every frame slides the enemies and the player between the fields of the last two ticks, see
+ * {@link GraphicView#renderFrame(Graphics, double)}.
+ * <p>
+ * The buffers belong to a canvas, that covers the graphic view inside the {@link Controller} frame while
+ * active rendering is on. The canvas never takes the focus, so the key bindings of the view keep working.
+ */
+public class ActiveRenderer {
+
+    private final GraphicView _view;
+    private final GameLoop _gameLoop;
+    private final Canvas _canvas = new Canvas();
+
+    private volatile long _frameNanos;
+    private volatile boolean _running;
+    private volatile boolean _active;
+    private volatile BufferStrategy _strategy;
+
+    private volatile int _framesPerSecond;
+
+    private Thread _thread;
+
+    /**
+     * @param view the view, that is drawn
+     * @param gameLoop the loop, that ticks the world, it tells how far the time is between two ticks
+     * @param maxFramesPerSecond the frame rate cap
+     */
+    public ActiveRenderer(GraphicView view, GameLoop gameLoop, int maxFramesPerSecond) {
+        _view = view;
+        _gameLoop = gameLoop;
+        setFrameRateCap(maxFramesPerSecond);
+        _canvas.setIgnoreRepaint(true);
+        _canvas.setFocusable(false);
+        _canvas.setBackground(Color.BLACK);
+    }
+
+    /**
+     * Starts the render thread. It sleeps until active rendering is switched on.
+     */
+    public void start() {
+        if (_running) {
+            return;
+        }
+        _running = true;
+        _thread = new Thread(this::run, "render");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    public void stop() {
+        _running = false;
+        if (_thread != null) {
+            LockSupport.unpark(_thread);
+        }
+    }
+
+    /**
+     * Switches active rendering on or off, e.g. off while the menu is shown, so Swing paints the menu.
+     * Has to be called on the EDT.
+     */
+    public void setActive(boolean active) {
+        if (active == _active) {
+            return;
+        }
+        if (active) {
+            _view.setLayout(new BorderLayout());
+            _view.add(_canvas, BorderLayout.CENTER);
+            _view.validate();
+            if (!_canvas.isDisplayable()) {
+                // the frame is not shown yet, try again when the game is shown the next time
+                _view.remove(_canvas);
+                return;
+            }
+            _canvas.createBufferStrategy(2);
+            _strategy = _canvas.getBufferStrategy();
+            _active = true;
+            if (_thread != null) {
+                LockSupport.unpark(_thread);
+            }
+        } else {
+            _active = false;
+            // wait for the frame, that is drawn right now, before the buffers go away
+            synchronized (this) {
+                _strategy = null;
+                _view.remove(_canvas);
+            }
+            _view.repaint();
+        }
+    }
+
+    public boolean isActive() {
+        return _active;
+    }
+
+    /**
+     * @param maxFramesPerSecond how many frames are drawn per second at most
+     */
+    public void setFrameRateCap(int maxFramesPerSecond) {
+        if (maxFramesPerSecond <= 0) {
+            throw new IllegalArgumentException("The frame rate cap has to be positive: " + maxFramesPerSecond);
+        }
+        _frameNanos = 1_000_000_000L / maxFramesPerSecond;
+    }
+
+    /**
+     * @return how many frames were drawn in the last second
+     */
+    public int getFramesPerSecond() {
+        return _framesPerSecond;
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        long second = next;
+        int frames = 0;
+        while (_running) {
+            if (!_active) {
+                _framesPerSecond = 0;
+                LockSupport.park(this);
+                next = System.nanoTime();
+                continue;
+            }
+            renderFrame();
+            frames++;
+            long now = System.nanoTime();
+            if (now - second >= 1_000_000_000L) {
+                _framesPerSecond = frames;
+                frames = 0;
+                second = now;
+            }
+            next += _frameNanos;
+            if (now - next > _frameNanos) {
+                // a frame took too long, don't rush the next ones
+                next = now;
+            }
+            LockSupport.parkNanos(next - now);
+        }
+    }
+
+    private synchronized void renderFrame() {
+        BufferStrategy strategy = _strategy;
+        if (strategy == null) {
+            return;
+        }
+        // the contents of the buffers can get lost at any time, then the frame is drawn again
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    _view.renderFrame(g, _gameLoop.getAlpha());
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+}
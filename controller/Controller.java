@@ -6,6 +6,8 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.WindowEvent;
+import java.awt.event.WindowFocusListener;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
@@ -21,7 +23,7 @@ import view.View;
 /**
  * Our controller listens for key events on the main window.
  */
-public class Controller extends JFrame implements KeyListener, ActionListener, MouseListener {
+public class Controller extends JFrame implements KeyListener, ActionListener, MouseListener, WindowFocusListener {
 
     /** The world that is updated upon every key press. */
     private World world;
@@ -73,6 +75,8 @@ public class Controller extends JFrame implements KeyListener, ActionListener, M
         // Listen for mouse events.
         // Not used in the current implementation.
         addMouseListener(this);
+        // Let go of the held keys, when the window loses the focus, their release would never come
+        addWindowFocusListener(this);
     }
 
     @Override
@@ -104,11 +108,13 @@ public class Controller extends JFrame implements KeyListener, ActionListener, M
                 break;
             case "Save Game":
                 //save game
-                //TODO SAVE GAME FUNCTIONALITY
+                Labyrinth.saveGame();
                 break;
             case "Load Game":
                 //load game
-                //TODO LOAD GAME FUNCTIONALITY
+                if (Labyrinth.loadGame()) {
+                    this.showGame();
+                }
                 break;
             case "Settings":
                 //settings
@@ -157,14 +163,28 @@ public class Controller extends JFrame implements KeyListener, ActionListener, M
 
     }
 
+    /////////////////// Window Events ////////////////////////////////
+
+    @Override
+    public void windowGainedFocus(WindowEvent e) {
+        // nothing to do, the keys are pressed again
+    }
+
+    @Override
+    public void windowLostFocus(WindowEvent e) {
+        Labyrinth.releaseKeys();
+    }
+
     /////////////////// HELPER METHODS ////////////////////////////////
 
     public void showMainMenu(){
+        Labyrinth.setPaused(true);
         cards.show(mainContainer, "MENU");
     }
 
     public void showGame(){
         cards.show(mainContainer, "GAME");
+        Labyrinth.setPaused(false);
     }
 
     private void handleSettings(){
@@ -202,6 +222,16 @@ public class Controller extends JFrame implements KeyListener, ActionListener, M
                     key.getCommand().run();
                 }
             });
+            if (key.getRelease() != null) {
+                String released = key.getKey() + "_RELEASED";
+                _inputMapGame.put(KeyStroke.getKeyStroke(key.getValue(), key.getModifier(), true), released);
+                _actionMapGame.put(released, new AbstractAction() {
+                    @Override
+                    public void actionPerformed(ActionEvent e) {
+                        key.getRelease().run();
+                    }
+                });
+            }
         });
     }
 }
@@ -0,0 +1,137 @@
+package controller;
+
+import java.util.concurrent.locks.LockSupport;
+
+import javax.swing.Timer;
+
+import model.Simulation;
+import model.World;
+
+/**
+ * The game loop. The simulation runs on its own thread with a fixed timestep, so the enemies move
+ * whether the player presses keys or not, and the render pass runs on the EDT at display rate.
+ * A slow tick therefore never blocks painting and a slow paint never slows down the game.
+ * The simulation thread holds the lock of the {@link World} while it ticks, views that read the world
+ * while painting should do the same.
+ */
+public class GameLoop {
+
+    /** How many ticks the loop may fall behind before it gives up catching up. */
+    private static final int MAX_CATCH_UP = 5;
+
+    private final Simulation _simulation;
+    private final Timer _renderTimer;
+
+    private volatile long _tickNanos;
+    /** When the last tick was due. */
+    private volatile long _lastTick;
+    private volatile boolean _running;
+    private volatile boolean _paused;
+
+    private Thread _thread;
+
+    /**
+     * @param simulation the simulation to tick
+     * @param ticksPerSecond how often the world is updated per second
+     * @param framesPerSecond how often the render pass is run per second, usually the refresh rate of the display
+     * @param render the render pass. It is run on the EDT, e.g. a repaint of the graphic view
+     */
+    public GameLoop(Simulation simulation, int ticksPerSecond, int framesPerSecond, Runnable render) {
+        _simulation = simulation;
+        setTickRate(ticksPerSecond);
+        _renderTimer = new Timer(Math.max(1, 1000 / framesPerSecond), e -> render.run());
+        _renderTimer.setCoalesce(true);
+    }
+
+    /**
+     * Starts the simulation thread and the render timer.
+     */
+    public void start() {
+        if (_running) {
+            return;
+        }
+        _running = true;
+        _thread = new Thread(this::runSimulation, "simulation");
+        _thread.setDaemon(true);
+        _thread.start();
+        _renderTimer.start();
+    }
+
+    /**
+     * Stops both loops. The simulation thread finishes its current tick first.
+     */
+    public void stop() {
+        _running = false;
+        _renderTimer.stop();
+        if (_thread != null) {
+            LockSupport.unpark(_thread);
+        }
+    }
+
+    /**
+     * While paused the world is not ticked, rendering goes on.
+     */
+    public void setPaused(boolean paused) {
+        _paused = paused;
+        if (!paused && _thread != null) {
+            LockSupport.unpark(_thread);
+        }
+    }
+
+    public boolean isPaused() {
+        return _paused;
+    }
+
+    /**
+     * Changes the tick rate. Takes effect with the next tick.
+     * @param ticksPerSecond how often the world is updated per second
+     */
+    public void setTickRate(int ticksPerSecond) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("The tick rate has to be positive: " + ticksPerSecond);
+        }
+        _tickNanos = 1_000_000_000L / ticksPerSecond;
+    }
+
+    public int getTickRate() {
+        return (int) (1_000_000_000L / _tickNanos);
+    }
+
+    /**
+     * How far the time is between the last tick and the next one, e.g. to draw things on their way
+     * from their last field to their current one.
+     * @return 0 right at the last tick, up to 1 when the next tick is due. 1 while paused
+     */
+    public double getAlpha() {
+        if (_paused) {
+            return 1;
+        }
+        double alpha = (double) (System.nanoTime() - _lastTick) / _tickNanos;
+        return Math.max(0, Math.min(1, alpha));
+    }
+
+    private void runSimulation() {
+        World world = _simulation.getWorld();
+        long next = System.nanoTime();
+        while (_running) {
+            if (_paused) {
+                LockSupport.parkNanos(_tickNanos);
+                next = System.nanoTime();
+                continue;
+            }
+            long now = System.nanoTime();
+            if (now - next > MAX_CATCH_UP * _tickNanos) {
+                // we are too far behind, e.g. after a debugger stop. Don't try to play it all at once
+                next = now;
+            }
+            while (now - next >= 0 && _running && !_paused) {
+                synchronized (world) {
+                    _simulation.tick();
+                }
+                _lastTick = next;
+                next += _tickNanos;
+            }
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+    }
+}
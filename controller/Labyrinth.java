@@ -1,8 +1,18 @@
 package controller;
 
 import java.awt.Dimension;
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
 import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 import javax.swing.*;
 
@@ -11,9 +21,12 @@ import model.Direction;
 import model.*;
 import model.Enemies.Enemies;
 import model.Enemies.Randemy;
+import model.Replay.InputRecorder;
+import model.Replay.MoveJournal;
 import values.keyPresses;
 import view.ConsoleView;
 import view.GraphicView;
+import view.ViewChannel;
 
 /**
  * This is our main program. It is responsible for creating all of the objects
@@ -27,12 +40,39 @@ public class Labyrinth {
     private static Boolean BORDERLESS;
     private static String LANGUAGE;
     private static int DIFFICULTY;
-
-    private static ArrayList<Level> _levels;
+    private static int TICK_RATE;
+    /** How many fields per second the player moves, while an arrow key is held. */
+    private static int MOVE_RATE;
+    /** Every how many ticks the autosave saves the whole world, in between it only appends the moves. */
+    private static int CHECKPOINT_TICKS;
+    /** Whether the game is drawn by its own render thread, see {@link ActiveRenderer}. */
+    private static boolean ACTIVE_RENDERING;
+    /** Where the moves of the game are recorded to, set with -Dlabyrinth.record=file. Null records nothing. */
+    private static Path RECORDING;
+
+    /** Where the game is saved to and loaded from. */
+    private static final Path SAVE_FILE = Path.of("savegame.sav");
+    /** Where the autosave keeps its checkpoint and journal, see {@link MoveJournal}. */
+    private static final Path AUTOSAVE_DIRECTORY = Path.of("autosave");
+
+    /** Loads the levels in the order they are played. Level files are only decoded when they are needed. */
+    private static ArrayList<Callable<Level>> _levels;
     private static int _currentLevel;
+    /** Set while the autosave is played again, see {@link #recoverGame()}. */
+    private static boolean _recovering;
+    private static LevelPrefetcher prefetcher;
+    /** Writes the save games, so the game does not wait for the disk. */
+    private static final ExecutorService saver = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "save-game");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private static MainMenu mainMenu;
+    private static Simulation simulation;
     private static World world;
+    private static GameLoop gameLoop;
+    private static ActiveRenderer renderer;
     private static Dimension fieldDimensions;
     private static GraphicView gview;
     private static ConsoleView cview;
@@ -48,21 +88,38 @@ public class Labyrinth {
                 paramSetup();
 
                 // Create a new game world.
-                world = new World(_levels.get(0));
+                Level firstLevel;
+                try {
+                    firstLevel = _levels.get(0).call();
+                } catch (Exception e) {
+                    System.err.println("Could not load the first level: " + e.getMessage());
+                    System.exit(1);
+                    return;
+                }
+                simulation = new Simulation(firstLevel);
+                world = simulation.getWorld();
+                applyMoveRate();
+                // Load the next level, whenever the end is reached, but not in the middle of the recovery
+                world.addLevelListener(w -> {
+                    if (!_recovering){
+                        loadNextLevel();
+                    }
+                });
 
                 // Size of a field in the graphical view.
                 fieldDimensions = new Dimension(SCALE_X, SCALE_Y);
                 // Create and register graphical view.
                 gview = new GraphicView(
-                        _levels.get(0).getLenX() * fieldDimensions.width,
-                        _levels.get(0).getLenY() * fieldDimensions.height,
+                        firstLevel.getLenX() * fieldDimensions.width,
+                        firstLevel.getLenY() * fieldDimensions.height,
                         fieldDimensions,
                         world);
                 world.registerView(gview);
 
                 // Create and register console view.
+                // it prints on a thread of its own, a slow terminal only skips frames
                 cview = new ConsoleView();
-                world.registerView(cview);
+                world.registerView(cview, ViewChannel.Policy.COALESCE);
 
                 // Register Keys
                 registerKeys();
@@ -76,7 +133,32 @@ public class Labyrinth {
                 //gview.setOffset(controller);
                 gview.setController(controller);
 
+                // Get the second level ready, while the first one is played
+                prefetcher = new LevelPrefetcher(_levels, gview);
+                prefetcher.prefetch(1);
+
+                // Continue where the last game stopped, then autosave from there on.
+                // a recording has to start with a new world, or it could not be replayed
+                if (RECORDING != null){
+                    startRecording();
+                } else{
+                    recoverGame();
+                }
+                startAutosave();
+
                 controller.setVisible(true);
+
+                // Start the game loop. It stays paused while the main menu is shown.
+                // the passive render pass only paints while the render thread does not
+                gameLoop = new GameLoop(simulation, TICK_RATE, displayRate(), () -> {
+                    if (!renderer.isActive()) {
+                        gview.renderChanges();
+                    }
+                });
+                renderer = new ActiveRenderer(gview, gameLoop, displayRate());
+                gameLoop.setPaused(true);
+                gameLoop.start();
+                renderer.start();
             }
         });
     }
@@ -109,12 +191,28 @@ public class Labyrinth {
 
     private static void registerKeys() {
         _keys = new ArrayList<keyPresses>();
-        _keys.add(new keyPresses("UP", KeyEvent.VK_UP, () -> world.movePlayer(Direction.UP), 0));
-        _keys.add(new keyPresses("DOWN", KeyEvent.VK_DOWN, () -> world.movePlayer(Direction.DOWN), 0));
-        _keys.add(new keyPresses("LEFT", KeyEvent.VK_LEFT, () -> world.movePlayer(Direction.LEFT), 0));
-        _keys.add(new keyPresses("RIGHT", KeyEvent.VK_RIGHT, () -> world.movePlayer(Direction.RIGHT), 0));
+        InputQueue input = simulation.getInput();
+        _keys.add(new keyPresses("UP", KeyEvent.VK_UP, () -> input.press(Direction.UP), () -> input.release(Direction.UP), 0));
+        _keys.add(new keyPresses("DOWN", KeyEvent.VK_DOWN, () -> input.press(Direction.DOWN), () -> input.release(Direction.DOWN), 0));
+        _keys.add(new keyPresses("LEFT", KeyEvent.VK_LEFT, () -> input.press(Direction.LEFT), () -> input.release(Direction.LEFT), 0));
+        _keys.add(new keyPresses("RIGHT", KeyEvent.VK_RIGHT, () -> input.press(Direction.RIGHT), () -> input.release(Direction.RIGHT), 0));
+        _keys.add(new keyPresses("ZOOM_IN", KeyEvent.VK_PAGE_UP, () -> gview.zoomIn(), 0));
+        _keys.add(new keyPresses("ZOOM_OUT", KeyEvent.VK_PAGE_DOWN, () -> gview.zoomOut(), 0));
         //_keys.add(new keyPresses("INTERACT", KeyEvent.VK_ENTER, () -> (), 0));
-        _keys.add(new keyPresses("ESC", KeyEvent.VK_ESCAPE, () -> controller.showMainMenu(), 0));
+        // the release of a held key never reaches the game, once the menu is shown
+        _keys.add(new keyPresses("ESC", KeyEvent.VK_ESCAPE, () -> {
+            input.releaseAll();
+            controller.showMainMenu();
+        }, 0));
+    }
+
+    /**
+     * Lets go of all keys, that are held, e.g. when the window loses the focus and their release never comes.
+     */
+    public static void releaseKeys(){
+        if (simulation != null){
+            simulation.getInput().releaseAll();
+        }
     }
 
     private static void paramSetup() {
@@ -122,6 +220,12 @@ public class Labyrinth {
         SCALE_X = 25;
         SCALE_Y = 25;
         DIFFICULTY = 0;
+        TICK_RATE = 8;
+        MOVE_RATE = 8;
+        CHECKPOINT_TICKS = 1024;
+        ACTIVE_RENDERING = true;
+        String recording = System.getProperty("labyrinth.record");
+        RECORDING = recording == null || recording.isBlank() ? null : Path.of(recording);
         _currentLevel = 0;
         BORDERLESS = true;
         LANGUAGE = "english";
@@ -140,12 +244,197 @@ public class Labyrinth {
         Level level1 = new Level(50, 30, "LEVEL1", walls, 0, 0, 30, 22, enemies1);
         Level level2 = new Level(10, 10, "LEVEL2", walls, 0, 0, 5, 5, enemies2);
         _levels = new ArrayList<>();
-        _levels.add(level1);
-        _levels.add(level2);
+        _levels.add(() -> level1);
+        _levels.add(() -> level2);
+
+        // level files replace the built in levels
+        loadLevelFiles(Path.of("levels"));
     }
 
+    /**
+     * Uses all the *.lvl files of a directory, sorted by their name, as the levels of the game.
+     * If there are none, the built in levels are kept. The files are read when the level is needed.
+     * @param directory the directory with the level files
+     */
+    private static void loadLevelFiles(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> levelFiles = files.filter(file -> file.toString().endsWith(".lvl")).sorted().toList();
+            ArrayList<Callable<Level>> levels = new ArrayList<>();
+            for (Path file : levelFiles) {
+                levels.add(() -> LevelFile.read(file));
+            }
+            if (!levels.isEmpty()) {
+                _levels = levels;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not load the levels in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The refresh rate of the screen, so the render pass does not draw frames nobody sees.
+     * @return the refresh rate in Hz, 60 if it is unknown
+     */
+    private static int displayRate(){
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? 60 : rate;
+    }
+
+    /**
+     * Switches to a level. It was usually prepared in the background already, then this is cheap.
+     * A level, that can not be loaded, is skipped.
+     * @param levelIndex the index of the level
+     */
     public static void loadLevel(int levelIndex){
-        world.newLevel(_levels.get(levelIndex));
+        Level level;
+        try {
+            level = prefetcher.take(levelIndex);
+        } catch (Exception e) {
+            System.err.println("Could not load level " + levelIndex + ": " + e.getMessage());
+            _currentLevel = levelIndex;
+            loadNextLevel();
+            return;
+        }
+        world.newLevel(level);
+        // only now, the view has taken the prepared background of this level
+        prefetcher.prefetch(levelIndex + 1);
+    }
+
+    /**
+     * Saves the game in the background. Only taking the snapshot holds up the world, writing it does not.
+     */
+    public static void saveGame(){
+        WorldSnapshot snapshot;
+        int levelIndex;
+        synchronized (world){
+            snapshot = world.snapshot();
+            levelIndex = _currentLevel;
+        }
+        saver.execute(() -> {
+            try {
+                SaveGame.write(SAVE_FILE, levelIndex, snapshot);
+            } catch (IOException e) {
+                System.err.println("Could not save the game: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Loads the saved game, if there is one.
+     * @return true if the game was loaded
+     */
+    public static boolean loadGame(){
+        try {
+            SaveGame save = SaveGame.read(SAVE_FILE);
+            Level level = prefetcher.take(save.getLevelIndex());
+            // checked before the world changes, a save of another level leaves the game as it is
+            if (!save.matches(level)){
+                // the game goes on, the level after it may have just been taken
+                prefetcher.prefetch(_currentLevel + 1);
+                throw new IllegalArgumentException("The save game belongs to another level than " + level.getName());
+            }
+            // a replay could not get here, what was recorded so far is kept
+            stopRecording();
+            synchronized (world){
+                world.newLevel(level);
+                _currentLevel = save.getLevelIndex();
+                world.restore(save);
+                // the autosave can not get here by playing its journal
+                simulation.checkpoint();
+            }
+            prefetcher.prefetch(_currentLevel + 1);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Could not load the game: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Gets the game back from the autosave, if there is one: the latest checkpoint and the moves after it.
+     */
+    private static void recoverGame(){
+        if (!MoveJournal.exists(AUTOSAVE_DIRECTORY)){
+            return;
+        }
+        try {
+            SaveGame checkpoint = MoveJournal.readCheckpoint(AUTOSAVE_DIRECTORY);
+            Level level = prefetcher.take(checkpoint.getLevelIndex());
+            if (!checkpoint.matches(level)){
+                prefetcher.prefetch(_currentLevel + 1);
+                throw new IllegalArgumentException("The autosave belongs to another level than " + level.getName());
+            }
+            synchronized (world){
+                world.newLevel(level);
+                _currentLevel = checkpoint.getLevelIndex();
+                world.restore(checkpoint);
+                _recovering = true;
+                try {
+                    MoveJournal.replay(AUTOSAVE_DIRECTORY, checkpoint, simulation);
+                } finally {
+                    _recovering = false;
+                }
+                prefetcher.prefetch(_currentLevel + 1);
+                // the game crashed right after the end of the level was reached
+                if (world.isCompleted()){
+                    if (_currentLevel + 1 < _levels.size()){
+                        loadNextLevel();
+                    } else{
+                        // the game was won already, a new one starts
+                        _currentLevel = 0;
+                        loadLevel(0);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Could not restore the autosave: " + e.getMessage());
+        }
+    }
+
+    private static void startAutosave(){
+        try {
+            MoveJournal journal = new MoveJournal(AUTOSAVE_DIRECTORY, CHECKPOINT_TICKS, () -> _currentLevel);
+            synchronized (world){
+                simulation.setJournal(journal);
+            }
+            // the last ticks are synced to the disk, when the game is closed
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "autosave-close"));
+        } catch (IOException e) {
+            System.err.println("Could not start the autosave: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records the moves of the game from now on, see {@link model.Replay.Replay}. The recording is written,
+     * when the game is closed or another game is loaded.
+     */
+    private static void startRecording(){
+        synchronized (world){
+            simulation.setRecorder(new InputRecorder(world.getSeed(), world.getEnemyPool() != null));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(Labyrinth::stopRecording, "recording"));
+    }
+
+    /**
+     * Stops the recording, if there is one, and writes it.
+     */
+    private static void stopRecording(){
+        InputRecorder recorder;
+        synchronized (world){
+            recorder = simulation.getRecorder();
+            simulation.setRecorder(null);
+        }
+        if (recorder == null){
+            return;
+        }
+        try {
+            recorder.finish().write(RECORDING);
+        } catch (IOException e) {
+            System.err.println("Could not write the recording: " + e.getMessage());
+        }
     }
 
     public static void loadNextLevel(){
@@ -154,7 +443,8 @@ public class Labyrinth {
             loadLevel(_currentLevel);
         } else{
             //TODO WIN SYSTEM
-            System.exit(0);
+            // not here, the simulation thread holds the lock of the world, that the EDT may be waiting for
+            SwingUtilities.invokeLater(() -> System.exit(0));
         }
     }
 
@@ -196,6 +486,66 @@ public class Labyrinth {
         DIFFICULTY = difficulty;
     }
 
+    public static int getTickRate(){
+        return TICK_RATE;
+    }
+
+    /**
+     * Changes how often the world is updated per second. Higher is more responsive, but costs more CPU.
+     */
+    public static void setTickRate(int tickRate){
+        TICK_RATE = tickRate;
+        if (gameLoop != null){
+            gameLoop.setTickRate(tickRate);
+        }
+        applyMoveRate();
+    }
+
+    public static int getMoveRate(){
+        return MOVE_RATE;
+    }
+
+    /**
+     * Changes how many fields per second the player moves, while an arrow key is held.
+     * It can not be faster than the tick rate.
+     */
+    public static void setMoveRate(int moveRate){
+        MOVE_RATE = moveRate;
+        applyMoveRate();
+    }
+
+    private static void applyMoveRate(){
+        if (simulation != null){
+            simulation.getInput().setRepeatTicks(Math.round((float) TICK_RATE / Math.max(1, MOVE_RATE)));
+        }
+    }
+
+    /**
+     * Stops or resumes the simulation, e.g. while the main menu is shown.
+     * The render thread only draws while the game is running, the menu is painted by Swing.
+     */
+    public static void setPaused(boolean paused){
+        if (gameLoop != null){
+            gameLoop.setPaused(paused);
+        }
+        if (renderer != null){
+            renderer.setActive(ACTIVE_RENDERING && !paused);
+        }
+        // nothing of the game is lost, if it is closed from the menu
+        if (paused && simulation != null && simulation.getJournal() != null){
+            simulation.getJournal().flush();
+        }
+    }
+
+    /**
+     * Caps the frames per second of the render thread.
+     */
+    public static void setFrameRateCap(int framesPerSecond){
+        if (renderer != null){
+            renderer.setFrameRateCap(framesPerSecond);
+        }
+    }
+
     public static ArrayList<keyPresses> getKeys(){
         return _keys;
     }
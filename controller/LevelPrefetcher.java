@@ -0,0 +1,88 @@
+package controller;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.Level;
+import view.GraphicView;
+
+/**
+ * Gets the next level ready while the current one is still played. On a background thread the level
+ * is loaded, e.g. decoded out of its file, and its background is rendered by the {@link GraphicView}.
+ * When the player reaches the end, switching the level is just a swap.
+ */
+public class LevelPrefetcher {
+
+    private final List<Callable<Level>> _levels;
+    private final GraphicView _view;
+    private final ExecutorService _executor;
+
+    /** The index of the level, that is prepared right now, or -1. */
+    private int _index = -1;
+    private Future<Level> _next;
+
+    /**
+     * @param levels loads the levels in the order they are played
+     * @param view the view, that renders the backgrounds in advance
+     */
+    public LevelPrefetcher(List<Callable<Level>> levels, GraphicView view) {
+        _levels = levels;
+        _view = view;
+        _executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "level-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts preparing a level in the background. A level, that was prepared before and not taken, is dropped.
+     * @param index the index of the level. Nothing happens if there is no such level
+     */
+    public synchronized void prefetch(int index) {
+        if (_next != null) {
+            _next.cancel(false);
+        }
+        if (index < 0 || index >= _levels.size()) {
+            _index = -1;
+            _next = null;
+            return;
+        }
+        Callable<Level> loader = _levels.get(index);
+        _index = index;
+        _next = _executor.submit(() -> {
+            Level level = loader.call();
+            _view.prepareLevel(level);
+            return level;
+        });
+    }
+
+    /**
+     * Returns a level. If it was prefetched, it is usually ready already, otherwise this waits for it
+     * or loads it right here.
+     * @param index the index of the level
+     * @return the level
+     * @throws Exception if the level could not be loaded
+     */
+    public synchronized Level take(int index) throws Exception {
+        if (index == _index && _next != null) {
+            Future<Level> next = _next;
+            _next = null;
+            _index = -1;
+            try {
+                return next.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+        return _levels.get(index).call();
+    }
+
+    public int size() {
+        return _levels.size();
+    }
+}
@@ -0,0 +1,340 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A wall layer for levels, that are too big to be held in memory, like 100k x 100k cells.
+ * The level is cut into square chunks of {@link #CHUNK_SIZE} x {@link #CHUNK_SIZE} cells, that are
+ * stored bit-packed in a file. The file is memory-mapped and a chunk is only copied into memory
+ * when a cell of it is asked for. At most a fixed number of chunks is kept, one, that was not used
+ * for a while, is thrown out first.
+ * <p>
+ * Looking up a cell of a chunk, that is loaded, takes no lock, so the enemies can be ticked in parallel.
+ * Only loading a chunk and throwing one out is done under the lock of the layer. A chunk, that was thrown out,
+ * stays valid for whoever still holds it, its walls never change.
+ * <p>
+ * Big levels keep their chunks right in the level file, see {@link LevelFile}.
+ * <p>
+ * The file looks like this:
+ * <pre>
+ *     int   magic "LCHK"
+ *     int   width
+ *     int   height
+ *     int   reserved, 0
+ *     ...   the chunks, row by row. Every chunk is CHUNK_SIZE rows of CHUNK_SIZE / 64 longs
+ * </pre>
+ */
+public class ChunkedWallLayer implements WallLayer {
+
+    /** Cells per side of a chunk. */
+    public static final int CHUNK_SIZE = 256;
+    private static final int CHUNK_SHIFT = 8;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    /** Longs per row of a chunk. */
+    private static final int CHUNK_STRIDE = CHUNK_SIZE / 64;
+    private static final int CHUNK_LONGS = CHUNK_SIZE * CHUNK_STRIDE;
+    private static final int CHUNK_BYTES = CHUNK_LONGS * 8;
+
+    private static final int MAGIC = 0x4C43484B;
+    private static final int HEADER_SIZE = 16;
+    /** Chunks per mapped segment, so no segment is bigger than 1 GiB. */
+    private static final int CHUNKS_PER_SEGMENT = (1 << 30) / CHUNK_BYTES;
+
+    private final int _width;
+    private final int _height;
+    private final int _chunksX;
+    private final int _chunksY;
+
+    private final MappedByteBuffer[] _segments;
+
+    /** The loaded chunks by their index, null if not loaded. */
+    private final AtomicReferenceArray<long[]> _table;
+    /**
+     * Set when a chunk is used, cleared by the clock, when it passes the chunk. Only a hint, so it is written
+     * without any lock.
+     */
+    private final boolean[] _used;
+
+    // Only touched under the lock of the layer.
+
+    /** The indices of the loaded chunks, the clock goes round them to find one to throw out. */
+    private final int[] _clock;
+    private int _hand;
+    private int _loaded;
+    private long _loads;
+
+    /**
+     * Opens a chunk file.
+     * @param file the file, written by {@link #write(Path, WallLayer)}
+     * @param maxChunks how many chunks may be in memory at the same time. Every chunk takes 8 KiB
+     */
+    public static ChunkedWallLayer open(Path file, int maxChunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a chunk file: " + file);
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            if (channel.size() < HEADER_SIZE + bytesFor(width, height)) {
+                throw new IOException("The chunk file is too short: " + file);
+            }
+            return map(channel, HEADER_SIZE, width, height, maxChunks);
+        }
+    }
+
+    /**
+     * Maps chunks, that are somewhere in a file, e.g. in a level file. The mapping stays valid after the
+     * channel is closed.
+     * @param channel the file
+     * @param position where the first chunk starts
+     * @param width the width of the layer
+     * @param height the height of the layer
+     * @param maxChunks how many chunks may be in memory at the same time
+     */
+    static ChunkedWallLayer map(FileChannel channel, long position, int width, int height, int maxChunks)
+            throws IOException {
+        int chunks = chunksFor(width) * chunksFor(height);
+        MappedByteBuffer[] segments = new MappedByteBuffer[(chunks + CHUNKS_PER_SEGMENT - 1) / CHUNKS_PER_SEGMENT];
+        for (int s = 0; s < segments.length; s++) {
+            int count = Math.min(CHUNKS_PER_SEGMENT, chunks - s * CHUNKS_PER_SEGMENT);
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    position + (long) s * CHUNKS_PER_SEGMENT * CHUNK_BYTES, (long) count * CHUNK_BYTES);
+        }
+        return new ChunkedWallLayer(width, height, segments, maxChunks);
+    }
+
+    /**
+     * @return how many bytes the chunks of a layer of this size take in a file
+     */
+    static long bytesFor(int width, int height) {
+        return (long) chunksFor(width) * chunksFor(height) * CHUNK_BYTES;
+    }
+
+    /**
+     * Writes any wall layer into a chunk file.
+     * @param file the file to write
+     * @param walls the walls to write
+     */
+    public static void write(Path file, WallLayer walls) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(walls.getWidth()).putInt(walls.getHeight()).putInt(0).flip();
+            writeFully(channel, header);
+            writeChunks(channel, walls);
+        }
+    }
+
+    /**
+     * Writes the chunks of any wall layer at the position of the channel, {@link #bytesFor(int, int)} bytes.
+     * @param channel the file to write to
+     * @param walls the walls to write
+     */
+    static void writeChunks(FileChannel channel, WallLayer walls) throws IOException {
+        int width = walls.getWidth();
+        int height = walls.getHeight();
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES);
+        for (int cy = 0; cy < chunksFor(height); cy++) {
+            for (int cx = 0; cx < chunksFor(width); cx++) {
+                chunk.clear();
+                for (int y = 0; y < CHUNK_SIZE; y++) {
+                    for (int word = 0; word < CHUNK_STRIDE; word++) {
+                        if (walls instanceof WallGrid grid) {
+                            // the rows of the grid are aligned to longs just like the chunks
+                            chunk.putLong(grid.getWord((cy << CHUNK_SHIFT) + y, cx * CHUNK_STRIDE + word));
+                            continue;
+                        }
+                        long bits = 0;
+                        for (int bit = 0; bit < 64; bit++) {
+                            if (walls.isWall((cx << CHUNK_SHIFT) + word * 64 + bit, (cy << CHUNK_SHIFT) + y)) {
+                                bits |= 1L << bit;
+                            }
+                        }
+                        chunk.putLong(bits);
+                    }
+                }
+                chunk.flip();
+                writeFully(channel, chunk);
+            }
+        }
+    }
+
+    private ChunkedWallLayer(int width, int height, MappedByteBuffer[] segments, int maxChunks) {
+        _width = width;
+        _height = height;
+        _chunksX = chunksFor(width);
+        _chunksY = chunksFor(height);
+        _segments = segments;
+        _table = new AtomicReferenceArray<>(_chunksX * _chunksY);
+        _used = new boolean[_chunksX * _chunksY];
+        _clock = new int[Math.max(1, Math.min(maxChunks, _chunksX * _chunksY))];
+    }
+
+    @Override
+    public int getWidth() {
+        return _width;
+    }
+
+    @Override
+    public int getHeight() {
+        return _height;
+    }
+
+    @Override
+    public boolean isWall(int x, int y) {
+        if (x < 0 || y < 0 || x >= _width || y >= _height) {
+            return false;
+        }
+        long[] chunk = chunk((y >>> CHUNK_SHIFT) * _chunksX + (x >>> CHUNK_SHIFT));
+        return (chunk[(y & CHUNK_MASK) * CHUNK_STRIDE + ((x & CHUNK_MASK) >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * The rows of the chunks are aligned to longs, so a word is one long of a chunk.
+     */
+    @Override
+    public long getWord(int y, int index) {
+        if (y < 0 || index < 0 || y >= _height || index >= _chunksX * CHUNK_STRIDE) {
+            return 0;
+        }
+        long[] chunk = chunk((y >>> CHUNK_SHIFT) * _chunksX + index / CHUNK_STRIDE);
+        return chunk[(y & CHUNK_MASK) * CHUNK_STRIDE + index % CHUNK_STRIDE];
+    }
+
+    /**
+     * Loads all the chunks, that touch the square around (x, y).
+     */
+    @Override
+    public void prefetch(int x, int y, int radius) {
+        int minX = Math.max(0, x - radius) >>> CHUNK_SHIFT;
+        int maxX = Math.min(_width - 1, x + radius) >>> CHUNK_SHIFT;
+        int minY = Math.max(0, y - radius) >>> CHUNK_SHIFT;
+        int maxY = Math.min(_height - 1, y + radius) >>> CHUNK_SHIFT;
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                chunk(cy * _chunksX + cx);
+            }
+        }
+    }
+
+    /**
+     * @return how many chunks were copied out of the file so far
+     */
+    public synchronized long getLoads() {
+        return _loads;
+    }
+
+    /**
+     * @return how many chunks are in memory right now
+     */
+    public synchronized int getLoadedChunks() {
+        return _loaded;
+    }
+
+    /**
+     * Iterates over all walls, chunk by chunk. This touches the whole level, so it is slow for big ones.
+     */
+    @Override
+    public Iterator<Wall> iterator() {
+        return new Iterator<>() {
+            private int _chunk = -1;
+            private long[] _bits;
+            private int _word = CHUNK_LONGS;
+            private long _current = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (_current == 0) {
+                    if (++_word >= CHUNK_LONGS) {
+                        if (++_chunk >= _chunksX * _chunksY) {
+                            _chunk = _chunksX * _chunksY;
+                            return false;
+                        }
+                        _bits = chunk(_chunk);
+                        _word = 0;
+                    }
+                    _current = _bits[_word];
+                }
+                return true;
+            }
+
+            @Override
+            public Wall next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int bit = Long.numberOfTrailingZeros(_current);
+                _current &= _current - 1;
+                int x = ((_chunk % _chunksX) << CHUNK_SHIFT) + (_word % CHUNK_STRIDE) * 64 + bit;
+                int y = ((_chunk / _chunksX) << CHUNK_SHIFT) + _word / CHUNK_STRIDE;
+                return new Wall(x, y);
+            }
+        };
+    }
+
+    /**
+     * Returns a chunk, and loads it from the file if it is not in memory.
+     */
+    private long[] chunk(int index) {
+        long[] chunk = _table.get(index);
+        if (chunk == null) {
+            chunk = load(index);
+        }
+        if (!_used[index]) {
+            // only written when it changes, so the threads don't fight over the cache line
+            _used[index] = true;
+        }
+        return chunk;
+    }
+
+    /**
+     * Copies a chunk out of the file. If too many are loaded, the clock goes round and throws out the first one,
+     * that was not used since the clock passed it last time.
+     */
+    private synchronized long[] load(int index) {
+        long[] chunk = _table.get(index);
+        if (chunk != null) {
+            // another thread was faster
+            return chunk;
+        }
+        chunk = new long[CHUNK_LONGS];
+        MappedByteBuffer segment = _segments[index / CHUNKS_PER_SEGMENT];
+        int offset = (index % CHUNKS_PER_SEGMENT) * CHUNK_BYTES;
+        segment.slice(offset, CHUNK_BYTES).asLongBuffer().get(chunk);
+        if (_loaded < _clock.length) {
+            _hand = _loaded++;
+        } else {
+            // bounded, the other threads may set the hints again all the time
+            for (int passes = 0; _used[_clock[_hand]] && passes < _clock.length; passes++) {
+                _used[_clock[_hand]] = false;
+                _hand = (_hand + 1) % _clock.length;
+            }
+            _table.set(_clock[_hand], null);
+        }
+        _clock[_hand] = index;
+        _hand = (_hand + 1) % _clock.length;
+        _used[index] = false;
+        _table.set(index, chunk);
+        _loads++;
+        return chunk;
+    }
+
+    private static int chunksFor(int cells) {
+        return (cells + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
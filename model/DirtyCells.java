@@ -0,0 +1,77 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The cells, that changed since a view last looked, e.g. the old and the new field of the player
+ * and of every enemy, that moved. A view, that only repaints these, does work by the number of changes
+ * instead of by the size of the screen.
+ * <p>
+ * When something changed, that is not about single cells, like a new level or a reset, or when there are
+ * more changes than the limit, the set just says, that everything changed.
+ * Cells may be in the set more than once.
+ */
+public class DirtyCells {
+
+    private final int _limit;
+    private long[] _cells = new long[64];
+    private int _count;
+    /** Everything changed. Nothing was drawn yet, so that is where it starts. */
+    private boolean _all = true;
+
+    /**
+     * @param limit how many cells are kept, before the set gives up and says, that everything changed
+     */
+    public DirtyCells(int limit) {
+        _limit = limit;
+    }
+
+    public void add(int x, int y) {
+        if (_all) {
+            return;
+        }
+        if (_count == _limit) {
+            markAll();
+            return;
+        }
+        if (_count == _cells.length) {
+            _cells = Arrays.copyOf(_cells, Math.min(_limit, 2 * _count));
+        }
+        _cells[_count++] = ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public void markAll() {
+        _all = true;
+        _count = 0;
+    }
+
+    /**
+     * @return true if everything has to be drawn again, then there are no single cells
+     */
+    public boolean isAll() {
+        return _all;
+    }
+
+    /**
+     * @return the number of changed cells
+     */
+    public int size() {
+        return _count;
+    }
+
+    public int getX(int i) {
+        return (int) (_cells[i] >> 32);
+    }
+
+    public int getY(int i) {
+        return (int) _cells[i];
+    }
+
+    /**
+     * Forgets all changes, after a view has drawn them.
+     */
+    public void clear() {
+        _count = 0;
+        _all = false;
+    }
+}
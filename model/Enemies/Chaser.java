@@ -0,0 +1,81 @@
+package model.Enemies;
+
+import model.Direction;
+import model.World;
+
+/**
+ * An enemy, that hunts the player. It follows the {@link model.FlowField} of the world, that all chasers share,
+ * so moving one costs a look at its four neighbours.
+ * In a {@link World} it is only used as the definition of the enemy, the {@link EnemyStore} moves it.
+ */
+public class Chaser implements Enemies {
+
+    private int _X;
+    private int _Y;
+
+    private final int _startX;
+    private final int _startY;
+
+    private boolean _activated;
+
+    private Direction _direction;
+
+    public Chaser(int x, int y, boolean activated) {
+        _X = x;
+        _Y = y;
+        _startX = x;
+        _startY = y;
+        _direction = Direction.NONE;
+        _activated = activated;
+    }
+
+    @Override
+    public void update(World world) {
+        if (_activated) {
+            _direction = world.getFlowField().towards(_X, _Y);
+            if (_direction != Direction.NONE && world.posCheckEnemies(_X + _direction.deltaX, _Y + _direction.deltaY)) {
+                _X += _direction.deltaX;
+                _Y += _direction.deltaY;
+            }
+            if (_X == world.getPlayerX() && _Y == world.getPlayerY()) {
+                world.levelReset();
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        _direction = Direction.NONE;
+        _X = _startX;
+        _Y = _startY;
+    }
+
+    @Override
+    public int getX() {
+        return _X;
+    }
+
+    @Override
+    public int getY() {
+        return _Y;
+    }
+
+    @Override
+    public Direction getDirection() {
+        return _direction;
+    }
+
+    @Override
+    public byte getType() {
+        return EnemyStore.TYPE_CHASER;
+    }
+
+    @Override
+    public boolean isActivated() {
+        return _activated;
+    }
+
+    public void setActivated(boolean activated) {
+        _activated = activated;
+    }
+}
@@ -3,6 +3,10 @@ package model.Enemies;
 import model.Direction;
 import model.World;
 
+/**
+ * An enemy of the player. Inside a {@link World} all enemies live in an {@link EnemyStore},
+ * implementations of this interface are used to define the enemies of a level and to look at single enemies.
+ */
 public interface Enemies {
 
     void update(World world);
@@ -15,4 +19,11 @@ public interface Enemies {
 
     Direction getDirection();
 
+    /**
+     * @return the type id, that tells the {@link EnemyStore} how this enemy behaves
+     */
+    byte getType();
+
+    boolean isActivated();
+
 }
@@ -0,0 +1,480 @@
+package model.Enemies;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import model.Direction;
+import model.EnemyIndex;
+import model.GameRandom;
+import model.World;
+
+/**
+ * Holds all the enemies of a level in parallel primitive arrays instead of one object per enemy.
+ * Enemy i is described by the i-th entry of every array, so ticking all of them is a tight loop
+ * over a few int arrays. The behaviour of an enemy is chosen by its type id.
+ * For code that wants to look at single enemies, {@link #asList()} hands out lightweight
+ * {@link Enemies} views into the store.
+ */
+public class EnemyStore {
+
+    /** Type id of the {@link Randemy}. */
+    public static final byte TYPE_RANDEMY = 0;
+    /** Type id of the {@link Chaser}. */
+    public static final byte TYPE_CHASER = 1;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /** Below this many enemies a task of the parallel tick is not split any further. */
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private int[] _x;
+    private int[] _y;
+    private int[] _startX;
+    private int[] _startY;
+    /** Ordinal of the {@link Direction} every enemy last moved in. */
+    private byte[] _direction;
+    private boolean[] _activated;
+    private byte[] _type;
+
+    private int _size;
+
+    /** Bit t is set if there is an enemy of type t in the store. */
+    private int _types;
+
+    /** Scratch space of the parallel tick: the claim of every enemy on a cell, or -1. */
+    private long[] _claims = new long[0];
+
+    public EnemyStore() {
+        this(8);
+    }
+
+    /**
+     * @param capacity the number of enemies, the store should have room for
+     */
+    public EnemyStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        _x = new int[capacity];
+        _y = new int[capacity];
+        _startX = new int[capacity];
+        _startY = new int[capacity];
+        _direction = new byte[capacity];
+        _activated = new boolean[capacity];
+        _type = new byte[capacity];
+    }
+
+    /**
+     * Creates a store out of enemy objects, e.g. {@link Randemy}s of a level definition.
+     * Their current position is the start position in the store.
+     * @param enemies the enemies to copy
+     */
+    public EnemyStore(List<? extends Enemies> enemies) {
+        this(enemies.size());
+        for (Enemies e : enemies) {
+            add(e.getType(), e.getX(), e.getY(), e.isActivated());
+        }
+    }
+
+    /**
+     * Creates a store straight out of its columns, e.g. from a level file. The arrays are taken over,
+     * not copied, and have to be of the same length. The positions are the start positions.
+     */
+    public EnemyStore(int[] x, int[] y, byte[] type, boolean[] activated) {
+        _size = x.length;
+        int capacity = Math.max(1, _size);
+        _x = x.length == 0 ? new int[capacity] : x;
+        _y = y.length == 0 ? new int[capacity] : y;
+        _startX = Arrays.copyOf(_x, capacity);
+        _startY = Arrays.copyOf(_y, capacity);
+        _direction = new byte[capacity];
+        Arrays.fill(_direction, (byte) Direction.NONE.ordinal());
+        _activated = activated.length == 0 ? new boolean[capacity] : activated;
+        _type = type.length == 0 ? new byte[capacity] : type;
+        for (int i = 0; i < _size; i++) {
+            _types |= 1 << _type[i];
+        }
+    }
+
+    /**
+     * Creates an independent copy of another store, e.g. to give every world its own enemies.
+     * @param other the store to copy
+     */
+    public EnemyStore(EnemyStore other) {
+        _size = other._size;
+        _x = Arrays.copyOf(other._x, Math.max(1, _size));
+        _y = Arrays.copyOf(other._y, Math.max(1, _size));
+        _startX = Arrays.copyOf(other._startX, Math.max(1, _size));
+        _startY = Arrays.copyOf(other._startY, Math.max(1, _size));
+        _direction = Arrays.copyOf(other._direction, Math.max(1, _size));
+        _activated = Arrays.copyOf(other._activated, Math.max(1, _size));
+        _type = Arrays.copyOf(other._type, Math.max(1, _size));
+        _types = other._types;
+    }
+
+    /**
+     * Adds an enemy, that starts at (x, y).
+     * @param type the type id, e.g. {@link #TYPE_RANDEMY}
+     * @return the index of the new enemy
+     */
+    public int add(byte type, int x, int y, boolean activated) {
+        if (_size == _x.length) {
+            grow();
+        }
+        int i = _size++;
+        _x[i] = x;
+        _y[i] = y;
+        _startX[i] = x;
+        _startY[i] = y;
+        _direction[i] = (byte) Direction.NONE.ordinal();
+        _activated[i] = activated;
+        _type[i] = type;
+        _types |= 1 << type;
+        return i;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @return true if there is at least one enemy of the type in the store
+     */
+    public boolean hasType(byte type) {
+        return (_types & (1 << type)) != 0;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Behaviour
+
+    /**
+     * Updates a single enemy, depending on its type.
+     * The {@link World} calls this for every enemy once per tick, it keeps its enemy index in sync.
+     * @param i the index of the enemy
+     * @param world the world the enemy lives in
+     */
+    public void update(int i, World world) {
+        if (!_activated[i]) {
+            return;
+        }
+        switch (_type[i]) {
+            case TYPE_RANDEMY:
+                updateRandemy(i, world);
+                break;
+            case TYPE_CHASER:
+                updateChaser(i, world);
+                break;
+        }
+    }
+
+    /**
+     * Moves randomly, or stands still.
+     */
+    private void updateRandemy(int i, World world) {
+        Direction direction = DIRECTIONS[world.getEnemyRandom().nextInt(DIRECTIONS.length)];
+        _direction[i] = (byte) direction.ordinal();
+        int x = _x[i] + direction.deltaX;
+        int y = _y[i] + direction.deltaY;
+        if (world.posCheckEnemies(x, y)) {
+            _x[i] = x;
+            _y[i] = y;
+        }
+        if (_x[i] == world.getPlayerX() && _y[i] == world.getPlayerY()) {
+            world.levelReset();
+        }
+    }
+
+    /**
+     * Steps towards the player along the shared {@link model.FlowField}, or stands still if the player
+     * is out of reach or the way is blocked by another enemy. Far away from the player it walks straight
+     * towards the player.
+     */
+    private void updateChaser(int i, World world) {
+        Direction direction = world.getFlowField().towards(_x[i], _y[i]);
+        _direction[i] = (byte) direction.ordinal();
+        int x = _x[i] + direction.deltaX;
+        int y = _y[i] + direction.deltaY;
+        if (direction != Direction.NONE && world.posCheckEnemies(x, y)) {
+            _x[i] = x;
+            _y[i] = y;
+        }
+        if (_x[i] == world.getPlayerX() && _y[i] == world.getPlayerY()) {
+            world.levelReset();
+        }
+    }
+
+    /**
+     * Updates all enemies at once on a ForkJoin pool. It works in two phases:
+     * <ol>
+     *     <li>In parallel, every enemy picks its move. A move is only allowed into a cell, that was free
+     *     at the start of the tick. The enemy claims that cell.</li>
+     *     <li>The claims are sorted and every claimed cell goes to the enemy with the lowest index.
+     *     Everybody else stays where they are.</li>
+     * </ol>
+     * No enemy sees the moves of the others, so the result only depends on the seed and not on the
+     * order or the number of threads. It differs from the sequential update, where later enemies
+     * already see the moves of earlier ones.
+     * @param world the world the enemies live in. It is only read
+     * @param index the enemy index of the world. It has to be in sync and is updated with the moves
+     * @param pool the pool, that runs the first phase
+     * @param seed the randomness of this tick. The same seed gives the same moves
+     * @return true if an enemy ended up on the player
+     */
+    public boolean tickParallel(World world, EnemyIndex index, ForkJoinPool pool, long seed) {
+        int n = _size;
+        if (n == 0) {
+            return false;
+        }
+        try {
+            Math.multiplyExact(Math.multiplyExact((long) world.getWidth(), world.getHeight()), n);
+        } catch (ArithmeticException e) {
+            throw new IllegalStateException("Too many cells and enemies for a parallel tick", e);
+        }
+        if (_claims.length < n) {
+            _claims = new long[n];
+        }
+        long[] claims = _claims;
+        pool.invoke(new PlanMoves(world, index, seed, 0, n));
+        // the claim encodes the cell first and the index second, so sorting groups the claimants
+        // of a cell and puts the lowest index in front
+        Arrays.parallelSort(claims, 0, n);
+        long width = world.getWidth();
+        long lastCell = -1;
+        for (int k = 0; k < n; k++) {
+            long claim = claims[k];
+            if (claim < 0) {
+                continue;
+            }
+            long cell = claim / n;
+            if (cell == lastCell) {
+                continue;
+            }
+            lastCell = cell;
+            int i = (int) (claim % n);
+            int x = (int) (cell % width);
+            int y = (int) (cell / width);
+            index.move(_x[i], _y[i], x, y, _type[i]);
+            world.markChanged(_x[i], _y[i]);
+            world.markChanged(x, y);
+            _x[i] = x;
+            _y[i] = y;
+        }
+        return index.isOccupied(world.getPlayerX(), world.getPlayerY());
+    }
+
+    /**
+     * The first phase of {@link #tickParallel(World, EnemyIndex, ForkJoinPool, long)}: picks the move of
+     * every enemy in a range and writes its claim. The range is split in halves until it is small enough.
+     */
+    private class PlanMoves extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final World _world;
+        private final EnemyIndex _index;
+        private final long _seed;
+        private final int _from;
+        private final int _to;
+
+        private PlanMoves(World world, EnemyIndex index, long seed, int from, int to) {
+            _world = world;
+            _index = index;
+            _seed = seed;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > PARALLEL_THRESHOLD) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new PlanMoves(_world, _index, _seed, _from, middle),
+                        new PlanMoves(_world, _index, _seed, middle, _to));
+                return;
+            }
+            long n = _size;
+            long width = _world.getWidth();
+            for (int i = _from; i < _to; i++) {
+                _claims[i] = -1;
+                if (!_activated[i]) {
+                    continue;
+                }
+                Direction direction = Direction.NONE;
+                switch (_type[i]) {
+                    case TYPE_RANDEMY:
+                        direction = DIRECTIONS[GameRandom.hashInt(_seed, i, DIRECTIONS.length)];
+                        break;
+                    case TYPE_CHASER:
+                        // the world computed the field before the tick, here it is only read
+                        direction = _world.getFlowField().towards(_x[i], _y[i]);
+                        break;
+                }
+                _direction[i] = (byte) direction.ordinal();
+                if (direction == Direction.NONE) {
+                    continue;
+                }
+                int x = _x[i] + direction.deltaX;
+                int y = _y[i] + direction.deltaY;
+                // the index is not written during this phase, so it still shows the start of the tick
+                if (_world.boundsChecker(x, y) && _world.noWallChecker(x, y) && !_index.isOccupied(x, y)) {
+                    _claims[i] = (y * width + x) * n + i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts one enemy back to its start position.
+     */
+    public void reset(int i) {
+        _direction[i] = (byte) Direction.NONE.ordinal();
+        _x[i] = _startX[i];
+        _y[i] = _startY[i];
+    }
+
+    /**
+     * Puts every enemy back to its start position.
+     */
+    public void resetAll() {
+        System.arraycopy(_startX, 0, _x, 0, _size);
+        System.arraycopy(_startY, 0, _y, 0, _size);
+        Arrays.fill(_direction, 0, _size, (byte) Direction.NONE.ordinal());
+    }
+
+    /**
+     * Puts every enemy where it was, e.g. when a game is loaded. The start positions and types stay.
+     * The columns are copied, they have as many entries as there are enemies.
+     */
+    public void restore(int[] x, int[] y, byte[] direction, boolean[] activated) {
+        if (x.length != _size || y.length != _size || direction.length != _size || activated.length != _size) {
+            throw new IllegalArgumentException("Expected " + _size + " enemies, got " + x.length);
+        }
+        System.arraycopy(x, 0, _x, 0, _size);
+        System.arraycopy(y, 0, _y, 0, _size);
+        System.arraycopy(direction, 0, _direction, 0, _size);
+        System.arraycopy(activated, 0, _activated, 0, _size);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Getters and Setters
+
+    public int getX(int i) {
+        return _x[i];
+    }
+
+    public int getY(int i) {
+        return _y[i];
+    }
+
+    public int getStartX(int i) {
+        return _startX[i];
+    }
+
+    public int getStartY(int i) {
+        return _startY[i];
+    }
+
+    public Direction getDirection(int i) {
+        return DIRECTIONS[_direction[i]];
+    }
+
+    public boolean isActivated(int i) {
+        return _activated[i];
+    }
+
+    public void setActivated(int i, boolean activated) {
+        _activated[i] = activated;
+    }
+
+    public byte getType(int i) {
+        return _type[i];
+    }
+
+    /**
+     * Returns a list view of the store. Every element is a small object, that only knows its index,
+     * so it always shows the current state of the enemy.
+     * @return the enemies as a list
+     */
+    public List<Enemies> asList() {
+        return new AbstractList<>() {
+            @Override
+            public Enemies get(int index) {
+                if (index < 0 || index >= _size) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return new StoredEnemy(index);
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+        };
+    }
+
+    private void grow() {
+        int capacity = _x.length * 2;
+        _x = Arrays.copyOf(_x, capacity);
+        _y = Arrays.copyOf(_y, capacity);
+        _startX = Arrays.copyOf(_startX, capacity);
+        _startY = Arrays.copyOf(_startY, capacity);
+        _direction = Arrays.copyOf(_direction, capacity);
+        _activated = Arrays.copyOf(_activated, capacity);
+        _type = Arrays.copyOf(_type, capacity);
+    }
+
+    /**
+     * An {@link Enemies} view of one entry of the store.
+     */
+    private class StoredEnemy implements Enemies {
+
+        private final int _index;
+
+        private StoredEnemy(int index) {
+            _index = index;
+        }
+
+        /**
+         * Goes through the world, so its enemy index stays in sync.
+         */
+        @Override
+        public void update(World world) {
+            world.updateEnemy(_index);
+        }
+
+        /**
+         * Only resets this enemy. The world does not notice that, use {@link World#levelReset()} instead
+         * for enemies that are part of a world.
+         */
+        @Override
+        public void reset() {
+            EnemyStore.this.reset(_index);
+        }
+
+        @Override
+        public int getY() {
+            return _y[_index];
+        }
+
+        @Override
+        public int getX() {
+            return _x[_index];
+        }
+
+        @Override
+        public Direction getDirection() {
+            return DIRECTIONS[_direction[_index]];
+        }
+
+        @Override
+        public byte getType() {
+            return _type[_index];
+        }
+
+        @Override
+        public boolean isActivated() {
+            return _activated[_index];
+        }
+    }
+}
@@ -3,9 +3,10 @@ package model.Enemies;
 import model.Direction;
 import model.World;
 
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
-
+/**
+ * An enemy, that walks around randomly.
+ * In a {@link World} it is only used as the definition of the enemy, the {@link EnemyStore} moves it.
+ */
 public class Randemy implements Enemies{
 
     private int _X;
@@ -18,7 +19,7 @@ public class Randemy implements Enemies{
 
     private Direction _direction;
 
-    public Randemy (int x, int y, Boolean activated){
+    public Randemy (int x, int y, boolean activated){
         _X = x;
         _Y = y;
         _startX = x;
@@ -31,7 +32,7 @@ public class Randemy implements Enemies{
     public void update(World world){
         if(_activated){
             _direction = Direction.NONE;
-            int i = ThreadLocalRandom.current().nextInt(0, 5);
+            int i = world.getEnemyRandom().nextInt(5);
             switch(i){
                 case 0:
                     _direction = Direction.NONE;
@@ -79,7 +80,13 @@ public class Randemy implements Enemies{
         return _direction;
     }
 
-    public Boolean isActivated(){
+    @Override
+    public byte getType(){
+        return EnemyStore.TYPE_RANDEMY;
+    }
+
+    @Override
+    public boolean isActivated(){
         return _activated;
     }
     public void setActivated(boolean activated){
@@ -0,0 +1,261 @@
+package model;
+
+import java.util.Arrays;
+
+import model.Enemies.EnemyStore;
+
+/**
+ * A hashed occupancy index of the cells, that have at least one enemy on them.
+ * It maps a cell to the number of enemies on it and the type of one of them, so asking "is there an enemy at (x, y)"
+ * is a hash lookup instead of a loop over all enemies. The memory it takes depends on
+ * the number of enemies and not on the size of the level.
+ * The index does not watch the enemies by itself, the {@link World} has to tell it, when they move.
+ */
+public class EnemyIndex {
+
+    /** Marks a free slot. No cell packs into this key, because y would have to be -1 and x Integer.MAX_VALUE. */
+    private static final long EMPTY = 0x7FFFFFFF_FFFFFFFFL;
+
+    private long[] _keys;
+    private int[] _counts;
+    /** The type of the enemy, that came to the cell last. */
+    private byte[] _types;
+    private int _mask;
+    /** Number of occupied cells. */
+    private int _size;
+    /** Number of enemies. */
+    private int _total;
+
+    public EnemyIndex() {
+        this(16);
+    }
+
+    /**
+     * @param expected the number of enemies, that are expected to be in the index
+     */
+    public EnemyIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(8, expected * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Throws away the current content and puts all the given enemies into the index.
+     * @param enemies the enemies to index
+     */
+    public void rebuild(EnemyStore enemies) {
+        clear();
+        for (int i = 0; i < enemies.size(); i++) {
+            add(enemies.getX(i), enemies.getY(i), enemies.getType(i));
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(_keys, EMPTY);
+        Arrays.fill(_counts, 0);
+        Arrays.fill(_types, (byte) 0);
+        _size = 0;
+        _total = 0;
+    }
+
+    /**
+     * @return the number of enemies in the index
+     */
+    public int getTotal() {
+        return _total;
+    }
+
+    public void add(int x, int y) {
+        add(x, y, EnemyStore.TYPE_RANDEMY);
+    }
+
+    /**
+     * Adds an enemy of the given type. If there are more enemies on the cell, it is the type,
+     * {@link #typeAt(int, int)} tells from now on.
+     */
+    public void add(int x, int y, byte type) {
+        long key = key(x, y);
+        int slot = find(key);
+        if (_keys[slot] == EMPTY) {
+            _keys[slot] = key;
+            _size++;
+        }
+        _counts[slot]++;
+        _types[slot] = type;
+        _total++;
+        if (_size * 2 > _keys.length) {
+            grow();
+        }
+    }
+
+    public void remove(int x, int y) {
+        int slot = find(key(x, y));
+        if (_keys[slot] == EMPTY) {
+            return;
+        }
+        _total--;
+        if (--_counts[slot] == 0) {
+            delete(slot);
+        }
+    }
+
+    /**
+     * Moves one enemy from one cell to another. Does nothing if the cells are the same.
+     * It takes the type of the old cell along, use {@link #move(int, int, int, int, byte)},
+     * if enemies of different types can share it.
+     */
+    public void move(int oldX, int oldY, int newX, int newY) {
+        move(oldX, oldY, newX, newY, typeAt(oldX, oldY));
+    }
+
+    /**
+     * Moves one enemy of the given type from one cell to another. Does nothing if the cells are the same.
+     */
+    public void move(int oldX, int oldY, int newX, int newY, byte type) {
+        if (oldX == newX && oldY == newY) {
+            return;
+        }
+        remove(oldX, oldY);
+        add(newX, newY, type);
+    }
+
+    /**
+     * @return the number of enemies at (x, y)
+     */
+    public int count(int x, int y) {
+        int slot = find(key(x, y));
+        return _counts[slot];
+    }
+
+    /**
+     * @return the type of an enemy at (x, y), or -1 if there is none. If enemies of different types
+     * share the cell, it is the type of the one, that came last
+     */
+    public byte typeAt(int x, int y) {
+        int slot = find(key(x, y));
+        return _keys[slot] == EMPTY ? -1 : _types[slot];
+    }
+
+    public boolean isOccupied(int x, int y) {
+        return _keys[find(key(x, y))] != EMPTY;
+    }
+
+    /**
+     * Counts the enemies inside a rectangle. Both corners are inclusive.
+     * Small regions are looked up cell by cell, large ones scan the index instead,
+     * whatever is cheaper.
+     */
+    public int countInRegion(int minX, int minY, int maxX, int maxY) {
+        int[] result = new int[1];
+        forEachInRegion(minX, minY, maxX, maxY, (x, y, count) -> result[0] += count);
+        return result[0];
+    }
+
+    /**
+     * Visits every occupied cell inside a rectangle. Both corners are inclusive.
+     * The order of the cells is not defined.
+     */
+    public void forEachInRegion(int minX, int minY, int maxX, int maxY, CellVisitor visitor) {
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+        long area = ((long) maxX - minX + 1) * ((long) maxY - minY + 1);
+        if (area <= _keys.length) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    int slot = find(key(x, y));
+                    if (_keys[slot] != EMPTY) {
+                        visitor.visit(x, y, _counts[slot]);
+                    }
+                }
+            }
+        } else {
+            for (int slot = 0; slot < _keys.length; slot++) {
+                long key = _keys[slot];
+                if (key == EMPTY) {
+                    continue;
+                }
+                int x = (int) (key >> 32);
+                int y = (int) key;
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                    visitor.visit(x, y, _counts[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Callback for {@link #forEachInRegion(int, int, int, int, CellVisitor)}.
+     */
+    public interface CellVisitor {
+        void visit(int x, int y, int count);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Hash table internals (linear probing)
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * @return the slot of the key, or the empty slot where it would have to go
+     */
+    private int find(long key) {
+        int slot = hash(key) & _mask;
+        while (_keys[slot] != EMPTY && _keys[slot] != key) {
+            slot = (slot + 1) & _mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Deletes a slot and shifts the following entries back, so no lookup chain gets broken.
+     */
+    private void delete(int slot) {
+        _size--;
+        int gap = slot;
+        int next = (gap + 1) & _mask;
+        while (_keys[next] != EMPTY) {
+            int home = hash(_keys[next]) & _mask;
+            // move the entry into the gap if its home is not between the gap and its position
+            if (((next - home) & _mask) >= ((next - gap) & _mask)) {
+                _keys[gap] = _keys[next];
+                _counts[gap] = _counts[next];
+                _types[gap] = _types[next];
+                gap = next;
+            }
+            next = (next + 1) & _mask;
+        }
+        _keys[gap] = EMPTY;
+        _counts[gap] = 0;
+        _types[gap] = 0;
+    }
+
+    private void allocate(int capacity) {
+        _keys = new long[capacity];
+        _counts = new int[capacity];
+        _types = new byte[capacity];
+        _mask = capacity - 1;
+        Arrays.fill(_keys, EMPTY);
+    }
+
+    private void grow() {
+        long[] oldKeys = _keys;
+        int[] oldCounts = _counts;
+        byte[] oldTypes = _types;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                _keys[slot] = oldKeys[i];
+                _counts[slot] = oldCounts[i];
+                _types[slot] = oldTypes[i];
+            }
+        }
+    }
+}
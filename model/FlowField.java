@@ -0,0 +1,179 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The distance of every field around the player to the player, walking around the walls.
+ * It is computed once with a breadth first search from the player's field and shared by all enemies,
+ * that chase the player. An enemy then only has to look at its four neighbours and step to the one,
+ * that is closer to the player.
+ * <p>
+ * The field only covers a square of {@code 2 * radius + 1} fields around the player, so the cost does
+ * not grow with the size of the level. It is only computed again, when the player moved to another field
+ * or the level changed, and then it is computed completely, there is nothing to gain by repairing the old one:
+ * when the player steps to a neighbour, the distance of every field changes by one, up or down.
+ * With a radius of 64 that is a search over 129 x 129 fields per move of the player, not per tick.
+ * <p>
+ * Enemies outside of the square have no distance. They walk straight towards the player instead, along the
+ * axis, that is further off first, see {@link #towards(int, int)}. That gets them into the square in open
+ * levels, in a maze they can get stuck behind a wall, until the player comes closer.
+ */
+public class FlowField {
+
+    /** The distance of fields, that can not be reached or are outside of the covered square. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final Direction[] STEPS = {Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT};
+
+    private final int _radius;
+    private final int _size;
+    private final int[] _distance;
+    private final int[] _queue;
+
+    /** The player's field and the walls, the field was computed for. */
+    private int _sourceX;
+    private int _sourceY;
+    private WallLayer _walls;
+
+    /** The top left corner of the covered square. */
+    private int _originX;
+    private int _originY;
+
+    private long _computations;
+
+    /**
+     * @param radius how far around the player the field reaches
+     */
+    public FlowField(int radius) {
+        _radius = radius;
+        _size = 2 * radius + 1;
+        _distance = new int[_size * _size];
+        _queue = new int[_size * _size];
+    }
+
+    /**
+     * Computes the field again if the player moved to another field or the level changed since the last time.
+     * @param world the world to compute the field for
+     */
+    public void update(World world) {
+        if (_walls == world.getWalls() && _sourceX == world.getPlayerX() && _sourceY == world.getPlayerY()) {
+            return;
+        }
+        _walls = world.getWalls();
+        _sourceX = world.getPlayerX();
+        _sourceY = world.getPlayerY();
+        compute(world);
+    }
+
+    /**
+     * Forgets the field, so the next {@link #update(World)} computes it again.
+     */
+    public void invalidate() {
+        _walls = null;
+    }
+
+    /**
+     * @return the number of steps from (x, y) to the player, or {@link #UNREACHABLE}
+     */
+    public int distance(int x, int y) {
+        int localX = x - _originX;
+        int localY = y - _originY;
+        if (localX < 0 || localY < 0 || localX >= _size || localY >= _size) {
+            return UNREACHABLE;
+        }
+        return _distance[localY * _size + localX];
+    }
+
+    /**
+     * The step from (x, y) towards the player. Outside of the covered square it is a straight step towards
+     * the player, if that is not blocked by a wall.
+     * @return the direction to the neighbour, that is closest to the player, or NONE if no neighbour
+     * is closer than (x, y) itself
+     */
+    public Direction towards(int x, int y) {
+        int localX = x - _originX;
+        int localY = y - _originY;
+        if (localX < 0 || localY < 0 || localX >= _size || localY >= _size) {
+            return approach(x, y);
+        }
+        int best = distance(x, y);
+        Direction direction = Direction.NONE;
+        for (Direction step : STEPS) {
+            int d = distance(x + step.deltaX, y + step.deltaY);
+            if (d < best) {
+                best = d;
+                direction = step;
+            }
+        }
+        return direction;
+    }
+
+    /**
+     * @return how often the field was computed, e.g. to check that it is not done every tick
+     */
+    public long getComputations() {
+        return _computations;
+    }
+
+    /**
+     * A step straight towards the player, first along the axis, that is further off.
+     * @return the step, or NONE if both steps are blocked
+     */
+    private Direction approach(int x, int y) {
+        int dx = _sourceX - x;
+        int dy = _sourceY - y;
+        Direction alongX = dx < 0 ? Direction.LEFT : Direction.RIGHT;
+        Direction alongY = dy < 0 ? Direction.UP : Direction.DOWN;
+        boolean xFirst = Math.abs(dx) >= Math.abs(dy);
+        Direction first = xFirst ? alongX : alongY;
+        Direction second = xFirst ? alongY : alongX;
+        if (isOpen(x + first.deltaX, y + first.deltaY)) {
+            return first;
+        }
+        if ((xFirst ? dy : dx) != 0 && isOpen(x + second.deltaX, y + second.deltaY)) {
+            return second;
+        }
+        return Direction.NONE;
+    }
+
+    private boolean isOpen(int x, int y) {
+        return _walls != null && x >= 0 && y >= 0 && x < _walls.getWidth() && y < _walls.getHeight()
+                && !_walls.isWall(x, y);
+    }
+
+    private void compute(World world) {
+        _computations++;
+        _originX = _sourceX - _radius;
+        _originY = _sourceY - _radius;
+        Arrays.fill(_distance, UNREACHABLE);
+        int head = 0;
+        int tail = 0;
+        int source = _radius * _size + _radius;
+        _distance[source] = 0;
+        _queue[tail++] = source;
+        while (head < tail) {
+            int cell = _queue[head++];
+            int localX = cell % _size;
+            int localY = cell / _size;
+            int next = _distance[cell] + 1;
+            for (Direction step : STEPS) {
+                int nx = localX + step.deltaX;
+                int ny = localY + step.deltaY;
+                if (nx < 0 || ny < 0 || nx >= _size || ny >= _size) {
+                    continue;
+                }
+                int neighbour = ny * _size + nx;
+                if (_distance[neighbour] != UNREACHABLE) {
+                    continue;
+                }
+                int x = nx + _originX;
+                int y = ny + _originY;
+                if (!world.boundsChecker(x, y) || !world.noWallChecker(x, y)) {
+                    continue;
+                }
+                _distance[neighbour] = next;
+                _queue[tail++] = neighbour;
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package model;
+
+/**
+ * A small, seeded random number generator (SplitMix64). Unlike {@link java.util.concurrent.ThreadLocalRandom}
+ * the same seed always gives the same numbers, so a game can be played again exactly like before.
+ * New independent streams can be split off, e.g. one for the enemies, and the whole state is a single
+ * long, that can be read and restored.
+ * An instance must not be shared between threads without synchronisation.
+ */
+public class GameRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long _state;
+
+    /**
+     * @param seed the seed. Equal seeds give equal streams
+     */
+    public GameRandom(long seed) {
+        _state = seed;
+    }
+
+    public long nextLong() {
+        _state += GOLDEN_GAMMA;
+        return mix(_state);
+    }
+
+    /**
+     * @param bound the upper bound (exclusive), has to be positive
+     * @return a number between 0 (inclusive) and bound (exclusive)
+     */
+    public int nextInt(int bound) {
+        // the upper 32 bits scaled to the bound, that is cheaper than a division
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Splits off a new stream. It does not overlap with this one in any practical way, and
+     * drawing from it does not change this one.
+     * @return the new stream
+     */
+    public GameRandom split() {
+        return new GameRandom(mix(nextLong() ^ 0x5DEECE66DL));
+    }
+
+    /**
+     * @return the whole state of the generator, e.g. to put it into a save game
+     */
+    public long getState() {
+        return _state;
+    }
+
+    public void setState(long state) {
+        _state = state;
+    }
+
+    /**
+     * The SplitMix64 finalizer. Turns any long into a well mixed one, so it can also be used
+     * to derive numbers from a counter without any state.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * A random number, that only depends on the seed and a counter, not on any state.
+     * @return a number between 0 (inclusive) and bound (exclusive)
+     */
+    public static int hashInt(long seed, long counter, int bound) {
+        return (int) ((mix(seed + (counter + 1) * GOLDEN_GAMMA) >>> 1) % bound);
+    }
+}
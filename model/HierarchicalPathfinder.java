@@ -0,0 +1,425 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Finds long ways through big levels without looking at every field on the way (HPA*).
+ * <p>
+ * The level is cut into square clusters. Where two clusters touch, every run of open fields on both sides
+ * of the border gets one entrance in its middle. Inside a cluster the distances between all its entrances
+ * are computed once. A query then searches the small graph of entrances with A* and only walks through
+ * single fields inside the clusters of the start and the goal and along the way, when the path is refined.
+ * <p>
+ * Clusters are built when they are first needed, or all at once in parallel with {@link #precompute()}.
+ * When a wall changes, {@link #wallChanged(int, int)} only throws away the clusters it touches.
+ * The found paths are close to, but not always exactly, the shortest ones.
+ * Instances are not thread safe.
+ */
+public class HierarchicalPathfinder {
+
+    public static final int DEFAULT_CLUSTER_SIZE = 32;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final long START = -1;
+    private static final long GOAL = -2;
+    private static final Direction[] STEPS = {Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT};
+
+    private final WallLayer _walls;
+    private final int _width;
+    private final int _height;
+    private final int _size;
+    private final int _clustersX;
+    private final int _clustersY;
+
+    /** The built clusters, null if a cluster was not built yet or has to be built again. */
+    private final Cluster[] _clusters;
+
+    /** Scratch space of the searches inside a cluster. */
+    private final int[] _local;
+    private final int[] _queue;
+
+    public HierarchicalPathfinder(WallLayer walls) {
+        this(walls, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * @param walls the walls of the level
+     * @param clusterSize the number of fields per side of a cluster
+     */
+    public HierarchicalPathfinder(WallLayer walls, int clusterSize) {
+        _walls = walls;
+        _width = walls.getWidth();
+        _height = walls.getHeight();
+        _size = clusterSize;
+        _clustersX = (_width + _size - 1) / _size;
+        _clustersY = (_height + _size - 1) / _size;
+        _clusters = new Cluster[_clustersX * _clustersY];
+        _local = new int[_size * _size];
+        _queue = new int[_size * _size];
+    }
+
+    /**
+     * Builds all clusters, that are not built yet, in parallel.
+     */
+    public void precompute() {
+        IntStream.range(0, _clusters.length).parallel().forEach(c -> {
+            if (_clusters[c] == null) {
+                _clusters[c] = build(c, new int[_size * _size], new int[_size * _size]);
+            }
+        });
+    }
+
+    /**
+     * Tells the pathfinder, that a wall was placed or removed. Only the cluster of the field and the clusters,
+     * that share a border with the field, are built again.
+     */
+    public void wallChanged(int x, int y) {
+        int cx = x / _size;
+        int cy = y / _size;
+        if (cx < 0 || cy < 0 || cx >= _clustersX || cy >= _clustersY) {
+            return;
+        }
+        _clusters[cy * _clustersX + cx] = null;
+        if (x % _size == 0 && cx > 0) _clusters[cy * _clustersX + cx - 1] = null;
+        if (x % _size == _size - 1 && cx < _clustersX - 1) _clusters[cy * _clustersX + cx + 1] = null;
+        if (y % _size == 0 && cy > 0) _clusters[(cy - 1) * _clustersX + cx] = null;
+        if (y % _size == _size - 1 && cy < _clustersY - 1) _clusters[(cy + 1) * _clustersX + cx] = null;
+    }
+
+    /**
+     * Finds a way from one field to another.
+     * @return the moves from the start to the goal, empty if they are the same, or null if there is no way
+     */
+    public List<Direction> findPath(int startX, int startY, int goalX, int goalY) {
+        if (!isFree(startX, startY) || !isFree(goalX, goalY)) {
+            return null;
+        }
+        List<Direction> path = new ArrayList<>();
+        int startCluster = clusterOf(startX, startY);
+        int goalCluster = clusterOf(goalX, goalY);
+        if (startCluster == goalCluster && localPath(startCluster, startX, startY, goalX, goalY, path)) {
+            return path;
+        }
+
+        Cluster start = cluster(startCluster);
+        Cluster goal = cluster(goalCluster);
+        int[] fromStart = localDistances(startCluster, startX, startY, start);
+        int[] toGoal = localDistances(goalCluster, goalX, goalY, goal);
+
+        // A* over the entrances. Nodes are fields, START and GOAL
+        HashMap<Long, Integer> cost = new HashMap<>();
+        HashMap<Long, Long> parent = new HashMap<>();
+        PriorityQueue<long[]> open = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        cost.put(START, 0);
+        open.add(new long[]{heuristic(startX, startY, goalX, goalY), START});
+        while (!open.isEmpty()) {
+            long[] entry = open.poll();
+            long node = entry[1];
+            int nodeCost = cost.get(node);
+            if (entry[0] - heuristic(node, startX, startY, goalX, goalY) > nodeCost) {
+                // an outdated entry of the queue
+                continue;
+            }
+            if (node == GOAL) {
+                return refine(parent, startX, startY, goalX, goalY, path);
+            }
+            if (node == START) {
+                for (int e = 0; e < start.size(); e++) {
+                    if (fromStart[e] != UNREACHABLE) {
+                        relax(open, cost, parent, node, key(start.x[e], start.y[e]), nodeCost + fromStart[e], startX, startY, goalX, goalY);
+                    }
+                }
+                continue;
+            }
+            int x = (int) (node % _width);
+            int y = (int) (node / _width);
+            int clusterIndex = clusterOf(x, y);
+            Cluster cluster = cluster(clusterIndex);
+            int e = cluster.indexOf(x, y);
+            for (int other = 0; other < cluster.size(); other++) {
+                int d = cluster.distance[e][other];
+                if (other != e && d != UNREACHABLE) {
+                    relax(open, cost, parent, node, key(cluster.x[other], cluster.y[other]), nodeCost + d, startX, startY, goalX, goalY);
+                }
+            }
+            for (Direction step : STEPS) {
+                int nx = x + step.deltaX;
+                int ny = y + step.deltaY;
+                if (isFree(nx, ny) && clusterOf(nx, ny) != clusterIndex && cluster(clusterOf(nx, ny)).indexOf(nx, ny) >= 0) {
+                    relax(open, cost, parent, node, key(nx, ny), nodeCost + 1, startX, startY, goalX, goalY);
+                }
+            }
+            if (clusterIndex == goalCluster && toGoal[e] != UNREACHABLE) {
+                relax(open, cost, parent, node, GOAL, nodeCost + toGoal[e], startX, startY, goalX, goalY);
+            }
+        }
+        return null;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Abstract search
+
+    private void relax(PriorityQueue<long[]> open, HashMap<Long, Integer> cost, HashMap<Long, Long> parent,
+                       long from, long to, int newCost, int startX, int startY, int goalX, int goalY) {
+        Integer old = cost.get(to);
+        if (old != null && old <= newCost) {
+            return;
+        }
+        cost.put(to, newCost);
+        parent.put(to, from);
+        open.add(new long[]{newCost + heuristic(to, startX, startY, goalX, goalY), to});
+    }
+
+    private long heuristic(long node, int startX, int startY, int goalX, int goalY) {
+        if (node == GOAL) {
+            return 0;
+        }
+        if (node == START) {
+            return heuristic(startX, startY, goalX, goalY);
+        }
+        return heuristic((int) (node % _width), (int) (node / _width), goalX, goalY);
+    }
+
+    private static long heuristic(int x, int y, int goalX, int goalY) {
+        return Math.abs(x - goalX) + Math.abs(y - goalY);
+    }
+
+    /**
+     * Turns the chain of entrances into single moves by searching inside the clusters between them.
+     */
+    private List<Direction> refine(HashMap<Long, Long> parent, int startX, int startY, int goalX, int goalY, List<Direction> path) {
+        ArrayList<Long> nodes = new ArrayList<>();
+        for (long node = GOAL; node != START; node = parent.get(node)) {
+            nodes.add(node);
+        }
+        Collections.reverse(nodes);
+        int x = startX;
+        int y = startY;
+        for (long node : nodes) {
+            int nx = node == GOAL ? goalX : (int) (node % _width);
+            int ny = node == GOAL ? goalY : (int) (node / _width);
+            if (clusterOf(x, y) == clusterOf(nx, ny)) {
+                localPath(clusterOf(x, y), x, y, nx, ny, path);
+            } else {
+                path.add(step(nx - x, ny - y));
+            }
+            x = nx;
+            y = ny;
+        }
+        return path;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Clusters
+
+    private Cluster cluster(int index) {
+        Cluster cluster = _clusters[index];
+        if (cluster == null) {
+            cluster = build(index, _local, _queue);
+            _clusters[index] = cluster;
+        }
+        return cluster;
+    }
+
+    /**
+     * Finds the entrances of a cluster and the distances between them.
+     */
+    private Cluster build(int index, int[] local, int[] queue) {
+        int cx = index % _clustersX;
+        int cy = index / _clustersX;
+        int minX = cx * _size;
+        int minY = cy * _size;
+        int maxX = Math.min(_width, minX + _size) - 1;
+        int maxY = Math.min(_height, minY + _size) - 1;
+        ArrayList<int[]> entrances = new ArrayList<>();
+        if (cy > 0) addEntrances(entrances, minX, maxX, minY, true, -1);
+        if (maxY < _height - 1) addEntrances(entrances, minX, maxX, maxY, true, 1);
+        if (cx > 0) addEntrances(entrances, minY, maxY, minX, false, -1);
+        if (maxX < _width - 1) addEntrances(entrances, minY, maxY, maxX, false, 1);
+
+        // a field in a corner can be the entrance of two borders, it is only one node
+        int[] xs = new int[entrances.size()];
+        int[] ys = new int[entrances.size()];
+        int count = 0;
+        outer:
+        for (int[] entrance : entrances) {
+            for (int i = 0; i < count; i++) {
+                if (xs[i] == entrance[0] && ys[i] == entrance[1]) {
+                    continue outer;
+                }
+            }
+            xs[count] = entrance[0];
+            ys[count] = entrance[1];
+            count++;
+        }
+        Cluster cluster = new Cluster(Arrays.copyOf(xs, count), Arrays.copyOf(ys, count));
+        for (int e = 0; e < count; e++) {
+            search(minX, minY, maxX, maxY, cluster.x[e], cluster.y[e], local, queue);
+            for (int other = 0; other < count; other++) {
+                cluster.distance[e][other] = local[(cluster.y[other] - minY) * _size + cluster.x[other] - minX];
+            }
+        }
+        return cluster;
+    }
+
+    /**
+     * Adds one entrance in the middle of every run of fields, that are open on both sides of a border.
+     * @param from first field along the border
+     * @param to last field along the border
+     * @param line the row (horizontal border) or column (vertical border) inside the cluster
+     * @param horizontal whether the border is horizontal
+     * @param outside -1 or 1, where the neighbouring cluster is
+     */
+    private void addEntrances(List<int[]> entrances, int from, int to, int line, boolean horizontal, int outside) {
+        int runStart = -1;
+        for (int i = from; i <= to + 1; i++) {
+            boolean open = i <= to && (horizontal
+                    ? isFree(i, line) && isFree(i, line + outside)
+                    : isFree(line, i) && isFree(line + outside, i));
+            if (open && runStart < 0) {
+                runStart = i;
+            } else if (!open && runStart >= 0) {
+                int middle = (runStart + i - 1) / 2;
+                entrances.add(horizontal ? new int[]{middle, line} : new int[]{line, middle});
+                runStart = -1;
+            }
+        }
+    }
+
+    /**
+     * The distances from a field to all the entrances of its cluster, without leaving the cluster.
+     */
+    private int[] localDistances(int index, int x, int y, Cluster cluster) {
+        int minX = (index % _clustersX) * _size;
+        int minY = (index / _clustersX) * _size;
+        search(minX, minY, Math.min(_width, minX + _size) - 1, Math.min(_height, minY + _size) - 1, x, y, _local, _queue);
+        int[] distances = new int[cluster.size()];
+        for (int e = 0; e < distances.length; e++) {
+            distances[e] = _local[(cluster.y[e] - minY) * _size + cluster.x[e] - minX];
+        }
+        return distances;
+    }
+
+    /**
+     * Finds the moves between two fields of the same cluster, without leaving it.
+     * @return false if there is no such way
+     */
+    private boolean localPath(int index, int fromX, int fromY, int toX, int toY, List<Direction> path) {
+        int minX = (index % _clustersX) * _size;
+        int minY = (index / _clustersX) * _size;
+        int maxX = Math.min(_width, minX + _size) - 1;
+        int maxY = Math.min(_height, minY + _size) - 1;
+        // search from the target, so walking downhill from the start gives the moves in order
+        search(minX, minY, maxX, maxY, toX, toY, _local, _queue);
+        int d = _local[(fromY - minY) * _size + fromX - minX];
+        if (d == UNREACHABLE) {
+            return false;
+        }
+        int x = fromX;
+        int y = fromY;
+        while (d > 0) {
+            for (Direction step : STEPS) {
+                int nx = x + step.deltaX;
+                int ny = y + step.deltaY;
+                if (nx >= minX && ny >= minY && nx <= maxX && ny <= maxY
+                        && _local[(ny - minY) * _size + nx - minX] == d - 1) {
+                    path.add(step);
+                    x = nx;
+                    y = ny;
+                    d--;
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Breadth first search inside a rectangle. The distances end up in local, indexed relative to the rectangle.
+     */
+    private void search(int minX, int minY, int maxX, int maxY, int fromX, int fromY, int[] local, int[] queue) {
+        Arrays.fill(local, UNREACHABLE);
+        int head = 0;
+        int tail = 0;
+        int source = (fromY - minY) * _size + fromX - minX;
+        local[source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int cell = queue[head++];
+            int x = cell % _size + minX;
+            int y = cell / _size + minY;
+            for (Direction step : STEPS) {
+                int nx = x + step.deltaX;
+                int ny = y + step.deltaY;
+                if (nx < minX || ny < minY || nx > maxX || ny > maxY || !isFree(nx, ny)) {
+                    continue;
+                }
+                int neighbour = (ny - minY) * _size + nx - minX;
+                if (local[neighbour] == UNREACHABLE) {
+                    local[neighbour] = local[cell] + 1;
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Helpers
+
+    private boolean isFree(int x, int y) {
+        return x >= 0 && y >= 0 && x < _width && y < _height && !_walls.isWall(x, y);
+    }
+
+    private int clusterOf(int x, int y) {
+        return (y / _size) * _clustersX + x / _size;
+    }
+
+    private long key(int x, int y) {
+        return (long) y * _width + x;
+    }
+
+    private static Direction step(int dx, int dy) {
+        for (Direction step : STEPS) {
+            if (step.deltaX == dx && step.deltaY == dy) {
+                return step;
+            }
+        }
+        return Direction.NONE;
+    }
+
+    /**
+     * The entrances of one cluster and the distances between them inside the cluster.
+     */
+    private static final class Cluster {
+
+        private final int[] x;
+        private final int[] y;
+        private final int[][] distance;
+
+        private Cluster(int[] x, int[] y) {
+            this.x = x;
+            this.y = y;
+            this.distance = new int[x.length][x.length];
+        }
+
+        private int size() {
+            return x.length;
+        }
+
+        private int indexOf(int fieldX, int fieldY) {
+            for (int i = 0; i < x.length; i++) {
+                if (x[i] == fieldX && y[i] == fieldY) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
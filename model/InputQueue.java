@@ -0,0 +1,167 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The keys of the player on their way from the window to the simulation. Pressing and releasing a key only
+ * pushes a small command onto a stack without locks, that is all the window thread ever does.
+ * The simulation takes all of them at once, when it ticks, and is the only one, that reads them.
+ * <p>
+ * A key, that is pressed, moves the player once on the next tick. As long as it is held, the player keeps
+ * on moving every {@link #setRepeatTicks(int) few ticks}, no matter how fast the keyboard repeats the key.
+ * The same direction pressed again and again before the next tick is only played once.
+ */
+public class InputQueue {
+
+    /** Directions pressed since the last tick, that are played at most. Older ones are dropped. */
+    private static final int MAX_TAPS = 4;
+
+    /** One press or release on top of the ones pushed before. Without a direction all keys are let go. */
+    private record Command(Direction direction, boolean pressed, Command next) {
+    }
+
+    /** The newest command, that the simulation has not taken yet. */
+    private final AtomicReference<Command> _top = new AtomicReference<>();
+
+    private volatile int _repeatTicks = 1;
+
+    // Everything below is only touched by the simulation.
+
+    /** Directions pressed, that were not played yet, oldest first. */
+    private final Direction[] _taps = new Direction[MAX_TAPS];
+    private int _tapCount;
+    /** The keys, that are held down right now, one bit for each direction. */
+    private int _held;
+    /** The direction held, that was pressed last. It moves the player while it is held. */
+    private Direction _current;
+    /** Ticks left, until a held key moves the player again. */
+    private int _wait;
+
+    /**
+     * Called when a key is pressed. Called again by the repeat of the keyboard, that does no harm.
+     * @param direction the direction of the key
+     */
+    public void press(Direction direction) {
+        push(direction, true);
+    }
+
+    /**
+     * Called when a key is released.
+     * @param direction the direction of the key
+     */
+    public void release(Direction direction) {
+        push(direction, false);
+    }
+
+    /**
+     * @param ticks every how many ticks a held key moves the player, at least one
+     */
+    public void setRepeatTicks(int ticks) {
+        _repeatTicks = Math.max(1, ticks);
+    }
+
+    public int getRepeatTicks() {
+        return _repeatTicks;
+    }
+
+    /**
+     * Takes the commands, that came in since the last tick. Only the simulation may call this, once per tick.
+     * @return the move for this tick, or null if the player stays
+     */
+    public Direction next() {
+        drain();
+        if (_wait > 0) {
+            _wait--;
+        }
+        Direction move = null;
+        if (_tapCount > 0) {
+            move = _taps[0];
+            System.arraycopy(_taps, 1, _taps, 0, --_tapCount);
+            _taps[_tapCount] = null;
+        } else if (_current != null && _wait == 0) {
+            move = _current;
+        }
+        if (move != null) {
+            _wait = _repeatTicks;
+        }
+        return move;
+    }
+
+    /**
+     * Lets go of all keys, e.g. when the game is left for the menu and the release of a key never comes.
+     */
+    public void releaseAll() {
+        push(null, false);
+    }
+
+    private void push(Direction direction, boolean pressed) {
+        Command top;
+        Command command;
+        do {
+            top = _top.get();
+            command = new Command(direction, pressed, top);
+        } while (!_top.compareAndSet(top, command));
+    }
+
+    /**
+     * Plays the commands in the order they were pushed.
+     */
+    private void drain() {
+        Command newest = _top.getAndSet(null);
+        if (newest == null) {
+            return;
+        }
+        // the stack has the newest on top, turn it around
+        Command oldest = null;
+        for (Command command = newest; command != null; command = command.next()) {
+            oldest = new Command(command.direction(), command.pressed(), oldest);
+        }
+        for (Command command = oldest; command != null; command = command.next()) {
+            if (command.direction() == null) {
+                Arrays.fill(_taps, null);
+                _tapCount = 0;
+                _held = 0;
+                _current = null;
+                continue;
+            }
+            int bit = 1 << command.direction().ordinal();
+            if (command.pressed()) {
+                if ((_held & bit) != 0) {
+                    // the keyboard repeats the key, the held key already moves the player
+                    continue;
+                }
+                _held |= bit;
+                _current = command.direction();
+                tap(command.direction());
+            } else {
+                _held &= ~bit;
+                if (_current == command.direction()) {
+                    _current = heldDirection();
+                }
+            }
+        }
+    }
+
+    private void tap(Direction direction) {
+        if (_tapCount > 0 && _taps[_tapCount - 1] == direction) {
+            return;
+        }
+        if (_tapCount == MAX_TAPS) {
+            System.arraycopy(_taps, 1, _taps, 0, --_tapCount);
+        }
+        _taps[_tapCount++] = direction;
+    }
+
+    /**
+     * @return any direction, that is still held, or null
+     */
+    private Direction heldDirection() {
+        for (Direction direction : Direction.values()) {
+            if ((_held & (1 << direction.ordinal())) != 0) {
+                return direction;
+            }
+        }
+        return null;
+    }
+}
@@ -1,8 +1,8 @@
 package model;
 
 import model.Enemies.Enemies;
+import model.Enemies.EnemyStore;
 
-import java.awt.*;
 import java.util.ArrayList;
 
 /**
@@ -13,13 +13,17 @@ public class Level {
     private final int _lenX;
     private final int _lenY;
     private final String _name;
-    private final ArrayList<Wall> _walls;
+    private final WallLayer _walls;
     private final int _startX;
     private final int _startY;
     private final int _endX;
     private final int _endY;
 
-    private final ArrayList<Enemies> _enemies;
+    private final EnemyStore _enemies;
+
+    /** Walls of the list, that did not make it into the wall grid. */
+    private final int _droppedWalls;
+    private final int _duplicateWalls;
 
     /**
      * Make a level. Yeah! It's just that easy..... Maybe not.
@@ -27,6 +31,7 @@ public class Level {
      * @param lenY The length of the game board in the Y-axis
      * @param name The name of the level
      * @param walls An ArrayList, that contains all the Walls. It is not checked, if theses are valid, so beware.
+     *              Walls outside of the board are dropped when the wall grid is built.
      * @param startX Starting coordinate for the player. It's of the X variety...
      * @param startY Starting coordinate for the player. It's of the Y variety...
      * @param endX X coordinate for the end point
@@ -37,7 +42,40 @@ public class Level {
         _lenX = lenX;
         _lenY = lenY;
         _name = name;
+        WallGrid grid = new WallGrid(lenX, lenY, walls);
+        _walls = grid;
+        int dropped = 0;
+        for (Wall wall : walls) {
+            if (wall.x() < 0 || wall.y() < 0 || wall.x() >= lenX || wall.y() >= lenY) {
+                dropped++;
+            }
+        }
+        _droppedWalls = dropped;
+        _duplicateWalls = walls.size() - dropped - grid.getCount();
+        _startX = startX;
+        _startY = startY;
+        _endX = endX;
+        _endY = endY;
+        _enemies = new EnemyStore(enemies);
+    }
+
+    /**
+     * Make a level out of an already built wall layer. The size of the level is the size of the layer.
+     * @param name The name of the level
+     * @param walls The layer, that holds all the walls, e.g. a {@link WallGrid} or a {@link ChunkedWallLayer}
+     * @param startX Starting coordinate for the player in the X-axis
+     * @param startY Starting coordinate for the player in the Y-axis
+     * @param endX X coordinate for the end point
+     * @param endY Y coordinate for the end point
+     * @param enemies the store, that holds all the enemies at their start positions
+     */
+    public Level(String name, WallLayer walls, int startX, int startY, int endX, int endY, EnemyStore enemies) {
+        _lenX = walls.getWidth();
+        _lenY = walls.getHeight();
+        _name = name;
         _walls = walls;
+        _droppedWalls = 0;
+        _duplicateWalls = 0;
         _startX = startX;
         _startY = startY;
         _endX = endX;
@@ -54,7 +92,7 @@ public class Level {
     public String getName() {
         return _name;
     }
-    public ArrayList<Wall> getWalls() {
+    public WallLayer getWalls() {
         return _walls;
     }
     public int getStartX() {
@@ -69,8 +107,26 @@ public class Level {
     public int getEndY() {
         return _endY;
     }
-    public ArrayList<Enemies> getEnemies() {
+    /**
+     * The enemies of the level at their start positions. A {@link World} plays with its own copy.
+     * @return the enemies of the level
+     */
+    public EnemyStore getEnemies() {
         return _enemies;
     }
 
+    /**
+     * @return how many walls of the list, the level was made of, were outside of the board
+     */
+    public int getDroppedWalls() {
+        return _droppedWalls;
+    }
+
+    /**
+     * @return how many walls of the list, the level was made of, were on the same field as another one
+     */
+    public int getDuplicateWalls() {
+        return _duplicateWalls;
+    }
+
 }
@@ -0,0 +1,214 @@
+package model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import model.Enemies.EnemyStore;
+
+/**
+ * Reads and writes levels in a compact binary format. The walls are stored exactly like the
+ * {@link WallGrid} holds them and the enemies as columns like in the {@link EnemyStore}, so loading
+ * a level is a few bulk copies out of a memory-mapped file instead of building objects one by one.
+ * <p>
+ * Levels with more than {@link #CHUNKED_CELLS} cells don't fit into memory as a grid. Their walls are stored
+ * in chunks instead and are not read at all, when the level is loaded. The level plays on a
+ * {@link ChunkedWallLayer}, that maps them right out of the file.
+ * <pre>
+ *     int    magic "LLVL"
+ *     int    version
+ *     int    lenX, lenY, startX, startY, endX, endY
+ *     int    how the walls are stored: 0 as a grid, 1 as chunks (not in version 1, it always has a grid)
+ *     int    length of the name in bytes, then the name in UTF-8, padded with zeros to a multiple of 8
+ *     long   either (lenX + 63) / 64 * lenY longs: the wall grid, row by row, bit i of a long is x = 64 * index + i
+ *            or the chunks, like in the file of a {@link ChunkedWallLayer}
+ *     int    number of enemies n
+ *     int    n x coordinates, then n y coordinates
+ *     byte   n type ids, then n activation flags (0 or 1)
+ * </pre>
+ * All numbers are big endian.
+ */
+public final class LevelFile {
+
+    /** Levels with more cells than this are written in chunks, their grid would take more than 32 MiB. */
+    public static final long CHUNKED_CELLS = 1L << 28;
+    /** How many chunks of a big level are kept in memory, 32 MiB. */
+    private static final int MAX_CHUNKS = 4096;
+
+    private static final int MAGIC = 0x4C4C564C;
+    /** Version 2: the walls can be stored in chunks. */
+    private static final int VERSION = 2;
+    private static final int WALL_GRID = 0;
+    private static final int WALL_CHUNKS = 1;
+
+    private LevelFile() {
+    }
+
+    /**
+     * Loads a level.
+     * @param file the level file
+     * @return the level
+     * @throws IOException if the file can not be read or is not a level file
+     */
+    public static Level read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the file is mapped piece by piece, the walls of a big level alone can be more than 2 GiB
+            ByteBuffer header = map(channel, 0, 40);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a level file: " + file);
+            }
+            int version = header.getInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unknown level file version " + version + ": " + file);
+            }
+            int lenX = header.getInt();
+            int lenY = header.getInt();
+            int startX = header.getInt();
+            int startY = header.getInt();
+            int endX = header.getInt();
+            int endY = header.getInt();
+            if (lenX <= 0 || lenY <= 0) {
+                throw new IOException("Invalid level size " + lenX + "x" + lenY + ": " + file);
+            }
+            int wallFormat = version == 1 ? WALL_GRID : header.getInt();
+            int nameLength = header.getInt();
+            long position = header.position();
+            ByteBuffer nameBuffer = map(channel, position, nameLength);
+            byte[] nameBytes = new byte[nameLength];
+            nameBuffer.get(nameBytes);
+            position = align(position + nameLength);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            WallLayer walls;
+            if (wallFormat == WALL_GRID) {
+                long bytes = (long) ((lenX + 63) >>> 6) * lenY * 8;
+                if (bytes > Integer.MAX_VALUE) {
+                    throw new IOException("The wall grid is too large, the level has to be written again: " + file);
+                }
+                walls = new WallGrid(lenX, lenY, map(channel, position, bytes).asLongBuffer());
+                position += bytes;
+            } else if (wallFormat == WALL_CHUNKS) {
+                if (channel.size() < position + ChunkedWallLayer.bytesFor(lenX, lenY)) {
+                    throw new IOException("Broken level file: " + file);
+                }
+                walls = ChunkedWallLayer.map(channel, position, lenX, lenY, MAX_CHUNKS);
+                position += ChunkedWallLayer.bytesFor(lenX, lenY);
+            } else {
+                throw new IOException("Unknown wall format " + wallFormat + ": " + file);
+            }
+
+            ByteBuffer buffer = map(channel, position, channel.size() - position);
+            int enemies = buffer.getInt();
+            int[] x = new int[enemies];
+            int[] y = new int[enemies];
+            byte[] type = new byte[enemies];
+            boolean[] activated = new boolean[enemies];
+            buffer.asIntBuffer().get(x).get(y);
+            buffer.position(buffer.position() + enemies * 8);
+            buffer.get(type);
+            for (int i = 0; i < enemies; i++) {
+                activated[i] = buffer.get() != 0;
+            }
+            return new Level(name, walls, startX, startY, endX, endY, new EnemyStore(x, y, type, activated));
+        } catch (RuntimeException e) {
+            // a truncated file shows up as an underflow of the buffer
+            throw new IOException("Broken level file: " + file, e);
+        }
+    }
+
+    /**
+     * Saves a level. Its enemies are saved at their start positions. The walls of a level with more than
+     * {@link #CHUNKED_CELLS} cells, or one, that already is chunked, are written in chunks.
+     * @param file the file to write
+     * @param level the level to save
+     */
+    public static void write(Path file, Level level) throws IOException {
+        WallLayer walls = level.getWalls();
+        EnemyStore enemies = level.getEnemies();
+        int lenX = level.getLenX();
+        int lenY = level.getLenY();
+        int stride = (lenX + 63) >>> 6;
+        byte[] name = level.getName().getBytes(StandardCharsets.UTF_8);
+        boolean chunked = walls instanceof ChunkedWallLayer || (long) lenX * lenY > CHUNKED_CELLS;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate((int) align(40 + name.length));
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putInt(lenX).putInt(lenY)
+                    .putInt(level.getStartX()).putInt(level.getStartY())
+                    .putInt(level.getEndX()).putInt(level.getEndY())
+                    .putInt(chunked ? WALL_CHUNKS : WALL_GRID)
+                    .putInt(name.length).put(name);
+            header.position(header.limit()).flip();
+            writeFully(channel, header);
+
+            if (chunked) {
+                ChunkedWallLayer.writeChunks(channel, walls);
+            } else {
+                // the walls row by row, so huge levels don't need a second copy in memory
+                ByteBuffer row = ByteBuffer.allocate(stride * 8);
+                for (int y = 0; y < lenY; y++) {
+                    row.clear();
+                    for (int word = 0; word < stride; word++) {
+                        row.putLong(walls instanceof WallGrid grid ? grid.getWord(y, word) : word(walls, word, y));
+                    }
+                    row.flip();
+                    writeFully(channel, row);
+                }
+            }
+
+            int n = enemies.size();
+            ByteBuffer table = ByteBuffer.allocate(4 + n * 10);
+            table.putInt(n);
+            for (int i = 0; i < n; i++) {
+                table.putInt(enemies.getStartX(i));
+            }
+            for (int i = 0; i < n; i++) {
+                table.putInt(enemies.getStartY(i));
+            }
+            for (int i = 0; i < n; i++) {
+                table.put(enemies.getType(i));
+            }
+            for (int i = 0; i < n; i++) {
+                table.put((byte) (enemies.isActivated(i) ? 1 : 0));
+            }
+            table.flip();
+            writeFully(channel, table);
+        }
+    }
+
+    private static long word(WallLayer walls, int word, int y) {
+        long bits = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (walls.isWall(word * 64 + bit, y)) {
+                bits |= 1L << bit;
+            }
+        }
+        return bits;
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7;
+    }
+
+    /**
+     * Maps a part of the file. A part, that goes past the end of the file, is a broken file.
+     */
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size < 0 || position + size > channel.size()) {
+            throw new BufferUnderflowException();
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
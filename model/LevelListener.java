@@ -0,0 +1,15 @@
+package model;
+
+/**
+ * Classes that want to know when the player finished a level must implement this interface
+ * and register themselves at the {@link World}.
+ */
+public interface LevelListener {
+
+    /**
+     * Called when the player reached the end field of the current level.
+     *
+     * @param world the {@link World} in which the level was finished.
+     */
+    void levelCompleted(World world);
+}
@@ -0,0 +1,316 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import model.Enemies.EnemyStore;
+
+/**
+ * Checks, that levels can actually be played: everything is on the board, nothing stands on top of
+ * something else, and the end can be reached from the start.
+ * <p>
+ * Reachability does not walk field by field. Every row is read 64 fields at a time out of the wall words,
+ * the runs of open fields are cut out of the words with bit tricks, and runs, that touch a run in the row above,
+ * are merged with a union find. That is one pass over the level, no matter how twisted it is.
+ * <p>
+ * A whole pack of levels is checked in parallel, every level gets its own report with the time it took.
+ * Run {@link #main(String[])} with directories or level files to use it as a gate, it exits with 1
+ * if any level is broken.
+ */
+public class LevelValidator {
+
+    /**
+     * The result of checking one level.
+     * @param name the name of the level, or where it came from if it could not be loaded
+     * @param problems what is wrong with the level, empty if nothing is
+     * @param reachable whether the end can be reached from the start
+     * @param nanos how long loading and checking took
+     */
+    public record Report(String name, List<String> problems, boolean reachable, long nanos) {
+
+        public boolean isValid() {
+            return problems.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-30s %s %8.2f ms%s", name, isValid() ? "OK  " : "FAIL", nanos / 1e6,
+                    isValid() ? "" : "  " + String.join("; ", problems));
+        }
+    }
+
+    /**
+     * Checks all *.lvl files of the given directories and the given files, and prints a line per level.
+     */
+    public static void main(String[] args) throws IOException {
+        ArrayList<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Path.of(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> list = Files.list(path)) {
+                    list.filter(file -> file.toString().endsWith(".lvl")).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        ArrayList<Callable<Level>> levels = new ArrayList<>();
+        for (Path file : files) {
+            levels.add(() -> LevelFile.read(file));
+        }
+        long start = System.nanoTime();
+        List<Report> reports = validateAll(levels);
+        long nanos = System.nanoTime() - start;
+        int broken = 0;
+        for (Report report : reports) {
+            System.out.println(report);
+            if (!report.isValid()) {
+                broken++;
+            }
+        }
+        System.out.printf("%d levels, %d broken, %.2f ms%n", reports.size(), broken, nanos / 1e6);
+        if (broken > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Loads and checks a whole pack of levels in parallel.
+     * @param levels the loaders of the levels, like the ones the game uses
+     * @return one report per level, in the same order
+     */
+    public static List<Report> validateAll(List<? extends Callable<Level>> levels) {
+        return IntStream.range(0, levels.size()).parallel().mapToObj(i -> {
+            long start = System.nanoTime();
+            Level level;
+            try {
+                level = levels.get(i).call();
+            } catch (Exception e) {
+                return new Report("level " + i, List.of("could not be loaded: " + e.getMessage()), false,
+                        System.nanoTime() - start);
+            }
+            return validate(level, start);
+        }).toList();
+    }
+
+    /**
+     * Checks a single level.
+     * @param level the level to check
+     * @return what is wrong with it
+     */
+    public static Report validate(Level level) {
+        return validate(level, System.nanoTime());
+    }
+
+    private static Report validate(Level level, long start) {
+        ArrayList<String> problems = new ArrayList<>();
+        int lenX = level.getLenX();
+        int lenY = level.getLenY();
+        WallLayer walls = level.getWalls();
+        if (lenX <= 0 || lenY <= 0) {
+            problems.add("the board is empty: " + lenX + "x" + lenY);
+            return new Report(level.getName(), problems, false, System.nanoTime() - start);
+        }
+        if (level.getDroppedWalls() > 0) {
+            problems.add(level.getDroppedWalls() + " walls outside of the board");
+        }
+        if (level.getDuplicateWalls() > 0) {
+            problems.add(level.getDuplicateWalls() + " walls on top of other walls");
+        }
+
+        boolean fieldsOpen = checkField(problems, "the start", level.getStartX(), level.getStartY(), walls)
+                & checkField(problems, "the end", level.getEndX(), level.getEndY(), walls);
+        if (level.getStartX() == level.getEndX() && level.getStartY() == level.getEndY()) {
+            problems.add("the start is the end");
+        }
+
+        EnemyStore enemies = level.getEnemies();
+        EnemyIndex taken = new EnemyIndex(enemies.size());
+        int outside = 0;
+        int onWalls = 0;
+        int stacked = 0;
+        for (int i = 0; i < enemies.size(); i++) {
+            int x = enemies.getX(i);
+            int y = enemies.getY(i);
+            if (x < 0 || y < 0 || x >= lenX || y >= lenY) {
+                outside++;
+                continue;
+            }
+            if (walls.isWall(x, y)) {
+                onWalls++;
+            }
+            if (taken.isOccupied(x, y)) {
+                stacked++;
+            }
+            taken.add(x, y);
+        }
+        if (outside > 0) problems.add(outside + " enemies outside of the board");
+        if (onWalls > 0) problems.add(onWalls + " enemies on walls");
+        if (stacked > 0) problems.add(stacked + " enemies on top of other enemies");
+        if (taken.isOccupied(level.getStartX(), level.getStartY())) problems.add("an enemy on the start");
+        if (taken.isOccupied(level.getEndX(), level.getEndY())) problems.add("an enemy on the end");
+
+        boolean reachable = fieldsOpen && isReachable(walls, level.getStartX(), level.getStartY(), level.getEndX(), level.getEndY());
+        if (!reachable) {
+            problems.add("the end can not be reached from the start");
+        }
+        return new Report(level.getName(), problems, reachable, System.nanoTime() - start);
+    }
+
+    /**
+     * @return true if the field is an open field on the board
+     */
+    private static boolean checkField(List<String> problems, String what, int x, int y, WallLayer walls) {
+        if (x < 0 || y < 0 || x >= walls.getWidth() || y >= walls.getHeight()) {
+            problems.add(what + " is outside of the board: " + x + "," + y);
+            return false;
+        }
+        if (walls.isWall(x, y)) {
+            problems.add(what + " is on a wall: " + x + "," + y);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether there is a way between two open fields, going around the walls.
+     * Both fields have to be on the board and must not be walls.
+     */
+    public static boolean isReachable(WallLayer walls, int fromX, int fromY, int toX, int toY) {
+        int width = walls.getWidth();
+        int height = walls.getHeight();
+        int stride = (width + 63) >>> 6;
+        long lastMask = (width & 63) == 0 ? -1L : ~(-1L << width);
+        long[] row = new long[stride];
+
+        UnionFind runs = new UnionFind();
+        // the runs of the row above and of the current row: first field, last field and id
+        int[][] above = {new int[0], new int[0], new int[0]};
+        int aboveCount = 0;
+        int[][] current = {new int[16], new int[16], new int[16]};
+        int from = -1;
+        int to = -1;
+
+        for (int y = 0; y < height; y++) {
+            for (int i = 0; i < stride; i++) {
+                long wallBits = walls instanceof WallGrid grid ? grid.getWord(y, i) : word(walls, i, y);
+                row[i] = ~wallBits & (i == stride - 1 ? lastMask : -1L);
+            }
+            int count = cutRuns(row, current, runs);
+
+            // merge with the overlapping runs above, both lists are sorted
+            int a = 0;
+            int c = 0;
+            while (a < aboveCount && c < count) {
+                if (above[0][a] <= current[1][c] && current[0][c] <= above[1][a]) {
+                    runs.union(above[2][a], current[2][c]);
+                }
+                if (above[1][a] < current[1][c]) {
+                    a++;
+                } else {
+                    c++;
+                }
+            }
+            if (y == fromY) from = runAt(current, count, fromX);
+            if (y == toY) to = runAt(current, count, toX);
+
+            int[][] swap = above;
+            above = current;
+            current = swap;
+            aboveCount = count;
+        }
+        return from >= 0 && to >= 0 && runs.find(from) == runs.find(to);
+    }
+
+    /**
+     * Cuts the open fields of a row into runs. A run starts where an open field has no open field to its left,
+     * and ends where it has none to its right, and the words tell that for 64 fields at once.
+     * @return the number of runs
+     */
+    private static int cutRuns(long[] row, int[][] runs, UnionFind ids) {
+        int count = 0;
+        int starts = 0;
+        for (int i = 0; i < row.length; i++) {
+            long carryIn = i > 0 ? row[i - 1] >>> 63 : 0;
+            long carryOut = i < row.length - 1 ? row[i + 1] << 63 : 0;
+            long start = row[i] & ~((row[i] << 1) | carryIn);
+            long end = row[i] & ~((row[i] >>> 1) | carryOut);
+            // starts and ends of a row alternate, so the n-th end belongs to the n-th start
+            while (start != 0) {
+                if (starts == runs[0].length) {
+                    for (int k = 0; k < 3; k++) {
+                        runs[k] = Arrays.copyOf(runs[k], Math.max(16, 2 * starts));
+                    }
+                }
+                runs[0][starts] = (i << 6) + Long.numberOfTrailingZeros(start);
+                runs[2][starts] = ids.add();
+                starts++;
+                start &= start - 1;
+            }
+            while (end != 0) {
+                runs[1][count++] = (i << 6) + Long.numberOfTrailingZeros(end);
+                end &= end - 1;
+            }
+        }
+        return count;
+    }
+
+    private static int runAt(int[][] runs, int count, int x) {
+        for (int r = 0; r < count; r++) {
+            if (runs[0][r] <= x && x <= runs[1][r]) {
+                return runs[2][r];
+            }
+        }
+        return -1;
+    }
+
+    private static long word(WallLayer walls, int word, int y) {
+        long bits = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (walls.isWall(word * 64 + bit, y)) {
+                bits |= 1L << bit;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * A union find over the ids of the runs, with path halving.
+     */
+    private static final class UnionFind {
+
+        private int[] _parent = new int[64];
+        private int _size;
+
+        private int add() {
+            if (_size == _parent.length) {
+                _parent = Arrays.copyOf(_parent, 2 * _size);
+            }
+            _parent[_size] = _size;
+            return _size++;
+        }
+
+        private int find(int id) {
+            while (_parent[id] != id) {
+                _parent[id] = _parent[_parent[id]];
+                id = _parent[id];
+            }
+            return id;
+        }
+
+        private void union(int a, int b) {
+            a = find(a);
+            b = find(b);
+            if (a != b) {
+                _parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+    }
+}
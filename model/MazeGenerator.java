@@ -0,0 +1,177 @@
+package model;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import model.Enemies.EnemyStore;
+
+/**
+ * Generates perfect mazes (exactly one way between any two fields) as {@link Level}s.
+ * <p>
+ * Fields on even coordinates are the nodes of the maze, the fields in between are either walls or passages.
+ * The maze is cut into square regions, that are carved independently of each other in parallel with a
+ * randomised depth first search. Afterwards the regions are stitched together along a random spanning tree
+ * of the regions, so the whole level is a single perfect maze again.
+ * Regions are as wide as a whole number of longs of the {@link WallGrid}, so no two threads ever write to
+ * the same long.
+ * <p>
+ * The same seed and size always give the same level, no matter how many cores there are.
+ */
+public class MazeGenerator {
+
+    /** Nodes per side of a region. 128 nodes are 256 fields, that are 4 longs of a row. */
+    private static final int REGION_NODES = 128;
+    private static final int REGION_SHIFT = 7;
+    private static final int REGION_FIELDS = REGION_NODES * 2;
+
+    private final long _seed;
+    private final int _enemies;
+
+    /**
+     * @param seed the seed of the maze and the enemy placement
+     * @param enemies how many {@link model.Enemies.Randemy}s to put into the maze
+     */
+    public MazeGenerator(long seed, int enemies) {
+        _seed = seed;
+        _enemies = enemies;
+    }
+
+    /**
+     * Generates a level. The player starts in the top left corner and has to reach the node in the bottom right.
+     * @param name the name of the level
+     * @param lenX the width of the level, at least 1
+     * @param lenY the height of the level, at least 1
+     * @return the new level
+     */
+    public Level generate(String name, int lenX, int lenY) {
+        if (lenX <= 0 || lenY <= 0) {
+            throw new IllegalArgumentException("The size of a maze has to be positive: " + lenX + "x" + lenY);
+        }
+        int nodesX = (lenX + 1) / 2;
+        int nodesY = (lenY + 1) / 2;
+        int stride = (lenX + 63) >>> 6;
+        long[] bits = new long[stride * lenY];
+        Arrays.fill(bits, -1L);
+
+        int regionsX = (nodesX + REGION_NODES - 1) / REGION_NODES;
+        int regionsY = (nodesY + REGION_NODES - 1) / REGION_NODES;
+        IntStream.range(0, regionsX * regionsY).parallel().forEach(region ->
+                carveRegion(bits, stride, nodesX, nodesY, region % regionsX, region / regionsX,
+                        new GameRandom(GameRandom.mix(_seed + region))));
+        stitchRegions(bits, stride, nodesX, nodesY, regionsX, regionsY, new GameRandom(_seed));
+
+        WallGrid walls = new WallGrid(lenX, lenY, LongBuffer.wrap(bits));
+        int endX = 2 * (nodesX - 1);
+        int endY = 2 * (nodesY - 1);
+        return new Level(name, walls, 0, 0, endX, endY, placeEnemies(nodesX, nodesY, new GameRandom(~_seed)));
+    }
+
+    /**
+     * Carves a perfect maze into one region with an iterative randomised depth first search.
+     */
+    private static void carveRegion(long[] bits, int stride, int nodesX, int nodesY, int regionX, int regionY, GameRandom random) {
+        int firstX = regionX * REGION_NODES;
+        int firstY = regionY * REGION_NODES;
+        int width = Math.min(REGION_NODES, nodesX - firstX);
+        int height = Math.min(REGION_NODES, nodesY - firstY);
+        // nodes are numbered y * REGION_NODES + x, even in smaller regions at the edge, so it is all shifts
+        boolean[] visited = new boolean[REGION_NODES * REGION_NODES];
+        int[] stack = new int[width * height];
+        int[] options = new int[4];
+        int top = 0;
+
+        stack[top++] = 0;
+        visited[0] = true;
+        clear(bits, stride, 2 * firstX, 2 * firstY);
+        while (top > 0) {
+            int node = stack[top - 1];
+            int x = node & (REGION_NODES - 1);
+            int y = node >>> REGION_SHIFT;
+            int count = 0;
+            if (x > 0 && !visited[node - 1]) options[count++] = node - 1;
+            if (x < width - 1 && !visited[node + 1]) options[count++] = node + 1;
+            if (y > 0 && !visited[node - REGION_NODES]) options[count++] = node - REGION_NODES;
+            if (y < height - 1 && !visited[node + REGION_NODES]) options[count++] = node + REGION_NODES;
+            if (count == 0) {
+                top--;
+                continue;
+            }
+            int next = options[count == 1 ? 0 : random.nextInt(count)];
+            visited[next] = true;
+            stack[top++] = next;
+            int nextX = 2 * (firstX + (next & (REGION_NODES - 1)));
+            int nextY = 2 * (firstY + (next >>> REGION_SHIFT));
+            // the node and the wall between the two nodes
+            clear(bits, stride, nextX, nextY);
+            clear(bits, stride, (2 * (firstX + x) + nextX) / 2, (2 * (firstY + y) + nextY) / 2);
+        }
+    }
+
+    /**
+     * Connects the regions along a random spanning tree of the regions, with one passage per tree edge.
+     */
+    private static void stitchRegions(long[] bits, int stride, int nodesX, int nodesY, int regionsX, int regionsY, GameRandom random) {
+        int regions = regionsX * regionsY;
+        boolean[] visited = new boolean[regions];
+        int[] stack = new int[regions];
+        int[] options = new int[4];
+        int top = 0;
+        stack[top++] = 0;
+        visited[0] = true;
+        while (top > 0) {
+            int region = stack[top - 1];
+            int x = region % regionsX;
+            int y = region / regionsX;
+            int count = 0;
+            if (x > 0 && !visited[region - 1]) options[count++] = region - 1;
+            if (x < regionsX - 1 && !visited[region + 1]) options[count++] = region + 1;
+            if (y > 0 && !visited[region - regionsX]) options[count++] = region - regionsX;
+            if (y < regionsY - 1 && !visited[region + regionsX]) options[count++] = region + regionsX;
+            if (count == 0) {
+                top--;
+                continue;
+            }
+            int next = options[count == 1 ? 0 : random.nextInt(count)];
+            visited[next] = true;
+            stack[top++] = next;
+            int nextX = next % regionsX;
+            int nextY = next / regionsX;
+            if (nextY == y) {
+                // a passage through the wall column between the two regions
+                int wallX = Math.max(x, nextX) * REGION_FIELDS - 1;
+                int rows = Math.min(REGION_NODES, nodesY - y * REGION_NODES);
+                clear(bits, stride, wallX, 2 * (y * REGION_NODES + random.nextInt(rows)));
+            } else {
+                int wallY = Math.max(y, nextY) * REGION_FIELDS - 1;
+                int columns = Math.min(REGION_NODES, nodesX - x * REGION_NODES);
+                clear(bits, stride, 2 * (x * REGION_NODES + random.nextInt(columns)), wallY);
+            }
+        }
+    }
+
+    /**
+     * Puts the enemies on random nodes, never two on the same one and never on the start or the end.
+     */
+    private EnemyStore placeEnemies(int nodesX, int nodesY, GameRandom random) {
+        long nodes = (long) nodesX * nodesY;
+        int count = (int) Math.min(_enemies, Math.max(0, nodes - 2));
+        EnemyStore enemies = new EnemyStore(count);
+        EnemyIndex taken = new EnemyIndex(count);
+        while (enemies.size() < count) {
+            long node = (random.nextLong() >>> 1) % nodes;
+            int x = (int) (2 * (node % nodesX));
+            int y = (int) (2 * (node / nodesX));
+            if (node == 0 || node == nodes - 1 || taken.isOccupied(x, y)) {
+                continue;
+            }
+            taken.add(x, y);
+            enemies.add(EnemyStore.TYPE_RANDEMY, x, y, true);
+        }
+        return enemies;
+    }
+
+    private static void clear(long[] bits, int stride, int x, int y) {
+        bits[y * stride + (x >>> 6)] &= ~(1L << x);
+    }
+}
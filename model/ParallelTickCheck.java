@@ -0,0 +1,105 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+
+import model.Enemies.EnemyStore;
+
+/**
+ * Checks, that the parallel enemy update gives the same game no matter how many threads it runs on,
+ * see {@link EnemyStore#tickParallel(World, EnemyIndex, ForkJoinPool, long)}.
+ * <p>
+ * Run {@link #main(String[])} to use it as a gate, it exits with 1 if any pool size plays a different game.
+ * It generates a maze, where every fourth enemy is a chaser, and plays the same seed and the same moves
+ * in one world per pool size, comparing all of them after every tick.
+ */
+public class ParallelTickCheck {
+
+    private static final int[] POOL_SIZES = {1, 2, 8};
+
+    /**
+     * @param args optionally the width and height of the maze, the number of enemies and the number of ticks
+     */
+    public static void main(String[] args) {
+        int lenX = args.length > 0 ? Integer.parseInt(args[0]) : 513;
+        int lenY = args.length > 1 ? Integer.parseInt(args[1]) : 513;
+        int enemies = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        int ticks = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        long seed = 42;
+
+        Level level = withChasers(new MazeGenerator(seed, enemies).generate("CHECK", lenX, lenY));
+        World[] worlds = new World[POOL_SIZES.length];
+        ForkJoinPool[] pools = new ForkJoinPool[POOL_SIZES.length];
+        for (int w = 0; w < worlds.length; w++) {
+            pools[w] = new ForkJoinPool(POOL_SIZES[w]);
+            worlds[w] = new World(level, seed);
+            worlds[w].setEnemyPool(pools[w]);
+        }
+
+        GameRandom moves = new GameRandom(seed);
+        Direction[] directions = Direction.values();
+        long start = System.nanoTime();
+        int broken = -1;
+        for (int tick = 0; tick < ticks && broken < 0; tick++) {
+            // the player walks around, half of the ticks without a move
+            Direction move = moves.nextInt(2) == 0 ? null : directions[1 + moves.nextInt(directions.length - 1)];
+            for (World world : worlds) {
+                if (move == null) {
+                    world.tick();
+                } else {
+                    world.movePlayer(move);
+                }
+            }
+            for (int w = 1; w < worlds.length; w++) {
+                if (!sameState(worlds[0], worlds[w])) {
+                    System.out.println("Tick " + tick + ": " + POOL_SIZES[w] + " threads differ from "
+                            + POOL_SIZES[0]);
+                    broken = tick;
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        for (ForkJoinPool pool : pools) {
+            pool.shutdown();
+        }
+        System.out.printf("%d x %d, %d enemies, %d ticks on %d pool sizes, %s, %.2f ms%n", lenX, lenY,
+                level.getEnemies().size(), ticks, POOL_SIZES.length, broken < 0 ? "all equal" : "DIFFERENT",
+                nanos / 1e6);
+        if (broken >= 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the level with every fourth enemy turned into a chaser
+     */
+    private static Level withChasers(Level level) {
+        EnemyStore enemies = level.getEnemies();
+        int n = enemies.size();
+        int[] x = new int[n];
+        int[] y = new int[n];
+        byte[] type = new byte[n];
+        boolean[] activated = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = enemies.getStartX(i);
+            y[i] = enemies.getStartY(i);
+            type[i] = i % 4 == 0 ? EnemyStore.TYPE_CHASER : enemies.getType(i);
+            activated[i] = enemies.isActivated(i);
+        }
+        return new Level(level.getName(), level.getWalls(), level.getStartX(), level.getStartY(),
+                level.getEndX(), level.getEndY(), new EnemyStore(x, y, type, activated));
+    }
+
+    private static boolean sameState(World a, World b) {
+        if (a.getPlayerX() != b.getPlayerX() || a.getPlayerY() != b.getPlayerY()) {
+            return false;
+        }
+        EnemyStore enemiesA = a.getEnemyStore();
+        EnemyStore enemiesB = b.getEnemyStore();
+        for (int i = 0; i < enemiesA.size(); i++) {
+            if (enemiesA.getX(i) != enemiesB.getX(i) || enemiesA.getY(i) != enemiesB.getY(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,92 @@
+package model.Replay;
+
+import java.util.Arrays;
+
+import model.Direction;
+
+/**
+ * Records the input of the player, one entry per tick. Runs of equal entries are stored as one code
+ * and a length, so long idle stretches or long walks down a corridor cost only a few bytes.
+ * Codes are 0 for a tick without a move and 1 + the ordinal of the {@link Direction} otherwise.
+ */
+public class InputRecorder {
+
+    private final long _seed;
+    private final boolean _parallel;
+
+    private byte[] _data = new byte[256];
+    private int _length;
+
+    private int _code = -1;
+    private long _run;
+    private long _ticks;
+
+    /**
+     * @param seed the seed of the world, that is recorded
+     */
+    public InputRecorder(long seed) {
+        this(seed, false);
+    }
+
+    /**
+     * @param seed the seed of the world, that is recorded
+     * @param parallel whether the world updates its enemies in parallel, that gives another game than the
+     *                 sequential update, so the replay has to do the same
+     */
+    public InputRecorder(long seed, boolean parallel) {
+        _seed = seed;
+        _parallel = parallel;
+    }
+
+    /**
+     * Records one tick.
+     * @param move the move the player made in this tick, or null if there was none
+     */
+    public void record(Direction move) {
+        int code = encode(move);
+        if (code != _code) {
+            flush();
+            _code = code;
+        }
+        _run++;
+        _ticks++;
+    }
+
+    public long getTicks() {
+        return _ticks;
+    }
+
+    /**
+     * @return everything, that was recorded so far
+     */
+    public Recording finish() {
+        flush();
+        return new Recording(_seed, _parallel, _ticks, Arrays.copyOf(_data, _length));
+    }
+
+    static int encode(Direction move) {
+        return move == null ? 0 : move.ordinal() + 1;
+    }
+
+    private void flush() {
+        if (_run == 0) {
+            return;
+        }
+        ensure(11);
+        _data[_length++] = (byte) _code;
+        // run length as a varint, 7 bits per byte
+        long run = _run;
+        while ((run & ~0x7FL) != 0) {
+            _data[_length++] = (byte) ((run & 0x7F) | 0x80);
+            run >>>= 7;
+        }
+        _data[_length++] = (byte) run;
+        _run = 0;
+    }
+
+    private void ensure(int bytes) {
+        if (_length + bytes > _data.length) {
+            _data = Arrays.copyOf(_data, Math.max(_data.length * 2, _length + bytes));
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package model.Replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import model.Direction;
+import model.GameRandom;
+import model.SaveGame;
+import model.Simulation;
+import model.World;
+import model.WorldSnapshot;
+
+/**
+ * Saves the game all the time, so not much is lost after a crash. Every few ticks the whole world is saved
+ * as a checkpoint, a {@link SaveGame}. In between only the input of every tick is appended to a journal,
+ * one byte per tick. The game thread only hands that byte over, writing it, syncing the journal to the disk
+ * and writing the checkpoints happens on a thread of its own.
+ * <p>
+ * Every tick is written to the file as soon as that thread gets to it, so if the game crashes, only the ticks
+ * are lost, that were still waiting for it, usually none. The journal is synced to the disk every
+ * {@link #SYNC_TICKS} ticks, when the game is paused and when it is closed, so if the whole system goes down,
+ * up to that many ticks are lost.
+ * <p>
+ * A new level always starts with a checkpoint, so a journal only ever holds ticks of one level.
+ * <p>
+ * To get the game back, load the checkpoint and play the journal on top of it, see
+ * {@link #replay(Path, SaveGame, World)}. Every checkpoint gets a random id, that is written into it and into
+ * the journal started after it. A journal, that does not have the id of the checkpoint, is not played,
+ * e.g. the one of the checkpoint before, if the game crashed between writing a checkpoint and starting its
+ * journal. The tick would not do, loading a game sets it back.
+ * <pre>
+ *     int   magic "LJRN"
+ *     int   version
+ *     long  id of the checkpoint
+ *     long  the number of ticks, the {@link model.Simulation} had played at the checkpoint
+ *     byte  one code per tick: 1 for a tick without a move, 2 + the ordinal of the {@link Direction} otherwise
+ * </pre>
+ * A code of 0 never comes up, so the zeros, a crash can leave at the end of the file, end the journal.
+ */
+public class MoveJournal {
+
+    /** The name of the checkpoint in the directory of the journal. */
+    public static final String CHECKPOINT = "checkpoint.sav";
+    /** The name of the journal in its directory. */
+    public static final String JOURNAL = "moves.journal";
+
+    private static final int MAGIC = 0x4C4A524E;
+    /** Version 2: the id of the checkpoint instead of its tick. Version 3: the ticks of the simulation. */
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 24;
+
+    /** How many ticks are written at most, before they are synced to the disk. */
+    private static final int SYNC_TICKS = 64;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Path _checkpoint;
+    private final Path _journal;
+    private final int _checkpointTicks;
+    private final IntSupplier _levelIndex;
+    private final ExecutorService _executor;
+
+    // Touched by the game thread, under the lock of the journal.
+
+    private int _sinceCheckpoint;
+    /** Where the ids of the checkpoints come from, different in every run of the game. */
+    private final GameRandom _ids = new GameRandom(GameRandom.mix(System.nanoTime()) ^ System.currentTimeMillis());
+
+    // Only touched by the thread of the journal.
+
+    private FileChannel _channel;
+    private final ByteBuffer _tick = ByteBuffer.allocate(1);
+    private int _unsynced;
+
+    /**
+     * @param directory where the checkpoint and the journal are kept, it is created if needed
+     * @param checkpointTicks every how many ticks the whole world is saved
+     * @param levelIndex tells the index of the level, that is played, for the checkpoints
+     */
+    public MoveJournal(Path directory, int checkpointTicks, IntSupplier levelIndex) throws IOException {
+        Files.createDirectories(directory);
+        _checkpoint = directory.resolve(CHECKPOINT);
+        _journal = directory.resolve(JOURNAL);
+        _checkpointTicks = Math.max(1, checkpointTicks);
+        _levelIndex = levelIndex;
+        _executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Appends one tick. Call it after the tick was played, while holding the lock of the world.
+     * Every few ticks this takes a checkpoint of the world as well.
+     * @param move the move the player made in this tick, or null if there was none
+     * @param world the world, that was ticked
+     * @param tick the number of ticks the simulation played, this one included
+     */
+    public synchronized void record(Direction move, World world, long tick) {
+        byte code = (byte) (move == null ? 1 : move.ordinal() + 2);
+        submit(() -> append(code));
+        if (++_sinceCheckpoint >= _checkpointTicks) {
+            checkpoint(world, tick);
+        }
+    }
+
+    /**
+     * Saves the whole world and starts a new journal, e.g. after a game was loaded, a new level started or the
+     * world was changed in any other way, than by playing ticks. Only the snapshot is taken right here, while
+     * holding the lock of the world, it is written in the background.
+     * @param world the world to save
+     * @param tick the number of ticks the simulation played so far
+     */
+    public synchronized void checkpoint(World world, long tick) {
+        WorldSnapshot snapshot = world.snapshot();
+        int levelIndex = _levelIndex.getAsInt();
+        long id = nextId();
+        _sinceCheckpoint = 0;
+        submit(() -> {
+            SaveGame.write(_checkpoint, levelIndex, snapshot, id);
+            // the checkpoint is safe now, the journal before it is not needed anymore
+            openJournal(id, tick);
+        });
+    }
+
+    /**
+     * Syncs the ticks, that were recorded so far, to the disk, e.g. before the game is paused.
+     * It does not wait for it.
+     */
+    public void flush() {
+        submit(this::sync);
+    }
+
+    /**
+     * Writes what is left and waits for it, then stops the thread of the journal, e.g. when the game is closed.
+     */
+    public void close() {
+        submit(() -> {
+            if (_channel != null) {
+                _channel.force(false);
+                _channel.close();
+                _channel = null;
+            }
+        });
+        _executor.shutdown();
+        try {
+            _executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param directory the directory of a journal
+     * @return true if there is a checkpoint, the game can be restored from
+     */
+    public static boolean exists(Path directory) {
+        return Files.isRegularFile(directory.resolve(CHECKPOINT));
+    }
+
+    /**
+     * @param directory the directory of a journal
+     * @return the latest checkpoint
+     * @throws IOException if there is none, or it can not be read
+     */
+    public static SaveGame readCheckpoint(Path directory) throws IOException {
+        return SaveGame.read(directory.resolve(CHECKPOINT));
+    }
+
+    /**
+     * Plays the ticks of the journal through the world of the simulation, the same way the simulation did,
+     * and sets the ticks of the simulation to the ones of the last tick, that was played.
+     * The world has to be in the state of the checkpoint, see {@link World#restore(SaveGame)}.
+     * A journal only holds the ticks of one level, the replay stops anyway, when the end of the level
+     * is reached. The level listeners of the world are told about that as usual, the listener has to know,
+     * that no level can be loaded in the middle of the replay.
+     * @param directory the directory of the journal
+     * @param checkpoint the checkpoint, the world was restored from
+     * @param simulation the simulation to play the ticks in
+     * @return how many ticks were played, 0 if the journal does not have the id of the checkpoint
+     * @throws IOException if the journal can not be read
+     */
+    public static long replay(Path directory, SaveGame checkpoint, Simulation simulation) throws IOException {
+        Path file = directory.resolve(JOURNAL);
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        byte[] data = Files.readAllBytes(file);
+        ByteBuffer header = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION
+                || header.getLong() != checkpoint.getId()) {
+            // the journal was not started yet after the checkpoint
+            return 0;
+        }
+        long start = header.getLong();
+        World world = simulation.getWorld();
+        long ticks = 0;
+        for (int i = HEADER_SIZE; i < data.length; i++) {
+            int code = data[i];
+            if (code < 1 || code > DIRECTIONS.length + 1) {
+                // the rest was never written completely
+                break;
+            }
+            if (code == 1) {
+                world.tick();
+            } else {
+                world.movePlayer(DIRECTIONS[code - 2]);
+            }
+            ticks++;
+            if (world.isCompleted()) {
+                break;
+            }
+        }
+        simulation.setTicks(start + ticks);
+        return ticks;
+    }
+
+    private long nextId() {
+        long id;
+        do {
+            id = _ids.nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    private void openJournal(long checkpointId, long tick) throws IOException {
+        if (_channel == null) {
+            _channel = FileChannel.open(_journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        _channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(checkpointId).putLong(tick).flip();
+        _channel.position(0);
+        writeFully(header);
+        _channel.force(false);
+        _unsynced = 0;
+    }
+
+    private void append(byte code) throws IOException {
+        if (_channel == null) {
+            // the first checkpoint could not be written, the ticks would not fit to any
+            return;
+        }
+        _tick.clear();
+        _tick.put(code).flip();
+        writeFully(_tick);
+        if (++_unsynced >= SYNC_TICKS) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        if (_channel != null && _unsynced > 0) {
+            _channel.force(false);
+            _unsynced = 0;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            _channel.write(buffer);
+        }
+    }
+
+    private void submit(Task task) {
+        try {
+            _executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (IOException e) {
+                    System.err.println("Could not write the autosave: " + e.getMessage());
+                }
+            });
+        } catch (RuntimeException e) {
+            // closed already, nothing is written anymore
+        }
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+}
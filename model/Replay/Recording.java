@@ -0,0 +1,145 @@
+package model.Replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import model.Direction;
+
+/**
+ * The recorded input of a game, made by an {@link InputRecorder}.
+ * It can be written to and read from a file:
+ * <pre>
+ *     int   magic "LREC"
+ *     byte  version
+ *     byte  1 if the enemies were updated in parallel, 0 if one after the other
+ *     long  seed of the world
+ *     long  number of ticks
+ *     int   number of data bytes
+ *     ...   the runs of the recorder
+ * </pre>
+ */
+public class Recording {
+
+    private static final int MAGIC = 0x4C524543;
+    /**
+     * Version 2: {@link model.GameRandom#nextInt(int)} scales instead of dividing, so version 1 would replay differently.
+     * Version 3: the way the enemies were updated is stored.
+     * Version 4: chasers far away from the player walk towards the player instead of standing still.
+     */
+    private static final byte VERSION = 4;
+    private static final int HEADER_SIZE = 4 + 1 + 1 + 8 + 8 + 4;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final long _seed;
+    private final boolean _parallel;
+    private final long _ticks;
+    private final byte[] _data;
+
+    Recording(long seed, boolean parallel, long ticks, byte[] data) {
+        _seed = seed;
+        _parallel = parallel;
+        _ticks = ticks;
+        _data = data;
+    }
+
+    public long getSeed() {
+        return _seed;
+    }
+
+    /**
+     * @return true if the enemies were updated in parallel, see {@link model.World#setEnemyPool}
+     */
+    public boolean isParallel() {
+        return _parallel;
+    }
+
+    public long getTicks() {
+        return _ticks;
+    }
+
+    /**
+     * @return the size of the recorded input in bytes, without the header
+     */
+    public int getSize() {
+        return _data.length;
+    }
+
+    /**
+     * Hands every recorded tick to the consumer, in order.
+     * @param consumer gets the move of every tick, or null for a tick without a move
+     */
+    public void play(TickConsumer consumer) {
+        int position = 0;
+        while (position < _data.length) {
+            int code = _data[position++];
+            long run = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = _data[position++];
+                run |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            Direction move = code == 0 ? null : DIRECTIONS[code - 1];
+            for (long i = 0; i < run; i++) {
+                consumer.tick(move);
+            }
+        }
+    }
+
+    /**
+     * Callback for {@link #play(TickConsumer)}.
+     */
+    public interface TickConsumer {
+        void tick(Direction move);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Files
+
+    public void write(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + _data.length);
+        buffer.putInt(MAGIC).put(VERSION).put((byte) (_parallel ? 1 : 0))
+                .putLong(_seed).putLong(_ticks).putInt(_data.length).put(_data);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static Recording read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a recording: " + file);
+            }
+            byte version = header.get();
+            if (version != VERSION) {
+                throw new IOException("Unknown recording version " + version + ", it would not replay the same: " + file);
+            }
+            boolean parallel = header.get() != 0;
+            long seed = header.getLong();
+            long ticks = header.getLong();
+            ByteBuffer data = ByteBuffer.allocate(header.getInt());
+            readFully(channel, data);
+            return new Recording(seed, parallel, ticks, data.array());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of the recording");
+            }
+        }
+        buffer.flip();
+    }
+}
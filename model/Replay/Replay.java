@@ -0,0 +1,63 @@
+package model.Replay;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import model.Level;
+import model.Simulation;
+
+/**
+ * Plays a {@link Recording} again, without any window and as fast as possible.
+ * As long as the levels are the same, the game ends up exactly where the recorded one did,
+ * so recordings can be used as repeatable load to measure how long the ticks of the world take.
+ */
+public final class Replay {
+
+    private Replay() {
+    }
+
+    /**
+     * Replays a recording. Whenever the player reaches the end of a level, the next one of the list is loaded.
+     * If the enemies were updated in parallel, they are here as well, on the common pool. The number of threads
+     * does not change the game.
+     * @param levels the levels, that were played in the recording, starting with the first one
+     * @param recording the recorded input
+     * @return where the replay ended and how long it took
+     */
+    public static Result run(List<Level> levels, Recording recording) {
+        Simulation simulation = new Simulation(levels.get(0), recording.getSeed());
+        if (recording.isParallel()) {
+            simulation.getWorld().setEnemyPool(ForkJoinPool.commonPool());
+        }
+        int[] current = {0};
+        simulation.addLevelListener(world -> {
+            if (current[0] + 1 < levels.size()) {
+                simulation.loadLevel(levels.get(++current[0]));
+            }
+        });
+        long start = System.nanoTime();
+        recording.play(move -> {
+            if (move != null) {
+                simulation.submit(move);
+            }
+            simulation.tick();
+        });
+        long nanos = System.nanoTime() - start;
+        return new Result(simulation.getTicks(), nanos, current[0], simulation.getPlayerX(), simulation.getPlayerY());
+    }
+
+    /**
+     * The outcome of a replay.
+     * @param ticks the number of ticks, that were played
+     * @param nanos how long they took
+     * @param level the index of the level the replay ended in
+     * @param playerX the x position of the player at the end
+     * @param playerY the y position of the player at the end
+     */
+    public record Result(long ticks, long nanos, int level, int playerX, int playerY) {
+
+        public double ticksPerSecond() {
+            return nanos == 0 ? Double.POSITIVE_INFINITY : ticks * 1e9 / nanos;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A saved game in a compact binary format. It is written from a {@link WorldSnapshot}, so the world can go on
+ * while the file is written, and holds the enemies as columns like the {@link model.Enemies.EnemyStore},
+ * so a save with lots of enemies is read with a few bulk copies.
+ * <pre>
+ *     int    magic "LSAV"
+ *     int    version
+ *     int    index of the level, lenX, lenY
+ *     int    length of the level name in bytes, then the name in UTF-8, padded with zeros to a multiple of 8
+ *     long   tick, state of the random stream of the enemies, id of the checkpoint (0 for a save of the player)
+ *     int    player x, player y, ordinal of the player's direction, resets
+ *     int    number of enemies n
+ *     int    n x coordinates, then n y coordinates
+ *     byte   n direction ordinals, then n activation flags (0 or 1)
+ * </pre>
+ * All numbers are big endian. The walls and the start positions are not saved, they come with the level.
+ * Version 1 had no id, it is still read, with an id of 0.
+ */
+public final class SaveGame {
+
+    private static final int MAGIC = 0x4C534156;
+    /** Version 2: the id of the checkpoint. */
+    private static final int VERSION = 2;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int _levelIndex;
+    private final String _levelName;
+    private final int _lenX;
+    private final int _lenY;
+    private final long _tick;
+    private final long _randomState;
+    private final long _id;
+    private final int _playerX;
+    private final int _playerY;
+    private final Direction _playerDirection;
+    private final int _resets;
+    private final int[] _enemyX;
+    private final int[] _enemyY;
+    private final byte[] _enemyDirection;
+    private final boolean[] _enemyActivated;
+
+    private SaveGame(int levelIndex, String levelName, int lenX, int lenY, long tick, long randomState, long id,
+                     int playerX, int playerY, Direction playerDirection, int resets,
+                     int[] enemyX, int[] enemyY, byte[] enemyDirection, boolean[] enemyActivated) {
+        _levelIndex = levelIndex;
+        _levelName = levelName;
+        _lenX = lenX;
+        _lenY = lenY;
+        _tick = tick;
+        _randomState = randomState;
+        _id = id;
+        _playerX = playerX;
+        _playerY = playerY;
+        _playerDirection = playerDirection;
+        _resets = resets;
+        _enemyX = enemyX;
+        _enemyY = enemyY;
+        _enemyDirection = enemyDirection;
+        _enemyActivated = enemyActivated;
+    }
+
+    /**
+     * Loads a saved game. The file is read in one go, not mapped, so it can be saved over right after.
+     * @param file the save file
+     * @return the saved game
+     * @throws IOException if the file can not be read or is not a save file
+     */
+    public static SaveGame read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Save file too large: " + file);
+            }
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full
+            }
+            buffer.flip();
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a save file: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unknown save file version " + version + ": " + file);
+            }
+            int levelIndex = buffer.getInt();
+            int lenX = buffer.getInt();
+            int lenY = buffer.getInt();
+            byte[] nameBytes = new byte[buffer.getInt()];
+            buffer.get(nameBytes);
+            buffer.position(align(buffer.position()));
+            String levelName = new String(nameBytes, StandardCharsets.UTF_8);
+
+            long tick = buffer.getLong();
+            long randomState = buffer.getLong();
+            long id = version == 1 ? 0 : buffer.getLong();
+            int playerX = buffer.getInt();
+            int playerY = buffer.getInt();
+            Direction playerDirection = DIRECTIONS[buffer.getInt()];
+            int resets = buffer.getInt();
+
+            int enemies = buffer.getInt();
+            int[] x = new int[enemies];
+            int[] y = new int[enemies];
+            byte[] direction = new byte[enemies];
+            boolean[] activated = new boolean[enemies];
+            buffer.asIntBuffer().get(x).get(y);
+            buffer.position(buffer.position() + enemies * 8);
+            buffer.get(direction);
+            for (int i = 0; i < enemies; i++) {
+                if (direction[i] < 0 || direction[i] >= DIRECTIONS.length) {
+                    throw new IOException("Broken save file: " + file);
+                }
+                activated[i] = buffer.get() != 0;
+            }
+            return new SaveGame(levelIndex, levelName, lenX, lenY, tick, randomState, id,
+                    playerX, playerY, playerDirection, resets, x, y, direction, activated);
+        } catch (RuntimeException e) {
+            // a truncated file shows up as an underflow of the buffer
+            throw new IOException("Broken save file: " + file, e);
+        }
+    }
+
+    /**
+     * Saves a game. It is written next to the file first and then moved over it, so a save, that breaks
+     * off halfway, never replaces the one before.
+     * @param file the file to write
+     * @param levelIndex the index of the level, that is played
+     * @param snapshot the state of the world to save, with all the enemies
+     * @throws IllegalArgumentException if the snapshot only holds a part of the world
+     */
+    public static void write(Path file, int levelIndex, WorldSnapshot snapshot) throws IOException {
+        write(file, levelIndex, snapshot, 0);
+    }
+
+    /**
+     * Saves a game with an id, e.g. a checkpoint, that other files refer to, see {@link #getId()}.
+     * @param id the id of the save, not 0
+     */
+    public static void write(Path file, int levelIndex, WorldSnapshot snapshot, long id) throws IOException {
+        if (!snapshot.isComplete()) {
+            throw new IllegalArgumentException("Only a snapshot of the whole world can be saved");
+        }
+        byte[] name = snapshot.getLevel().getName().getBytes(StandardCharsets.UTF_8);
+        int n = snapshot.getEnemyCount();
+        int header = align(24 + name.length);
+        ByteBuffer buffer = ByteBuffer.allocate(header + 44 + n * 10);
+        buffer.putInt(MAGIC).putInt(VERSION)
+                .putInt(levelIndex).putInt(snapshot.getWidth()).putInt(snapshot.getHeight())
+                .putInt(name.length).put(name)
+                .position(header);
+        buffer.putLong(snapshot.getTick()).putLong(snapshot.getRandomState()).putLong(id)
+                .putInt(snapshot.getPlayerX()).putInt(snapshot.getPlayerY())
+                .putInt(snapshot.getPlayerDirection().ordinal()).putInt(snapshot.getResets())
+                .putInt(n);
+        for (int i = 0; i < n; i++) {
+            buffer.putInt(snapshot.getEnemyX(i));
+        }
+        for (int i = 0; i < n; i++) {
+            buffer.putInt(snapshot.getEnemyY(i));
+        }
+        for (int i = 0; i < n; i++) {
+            buffer.put((byte) snapshot.getEnemyDirection(i).ordinal());
+        }
+        for (int i = 0; i < n; i++) {
+            buffer.put((byte) (snapshot.isEnemyActivated(i) ? 1 : 0));
+        }
+        buffer.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Checks, that the save belongs to a level, before anything of the world is changed.
+     * @param level the level, the save is going to be played in
+     * @return true if the name, the size and the number of enemies are the ones of the level
+     */
+    public boolean matches(Level level) {
+        return _levelName.equals(level.getName()) && _lenX == level.getLenX() && _lenY == level.getLenY()
+                && _enemyX.length == level.getEnemies().size();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Getters
+
+    public int getLevelIndex() {
+        return _levelIndex;
+    }
+
+    public String getLevelName() {
+        return _levelName;
+    }
+
+    public int getLenX() {
+        return _lenX;
+    }
+
+    public int getLenY() {
+        return _lenY;
+    }
+
+    public long getTick() {
+        return _tick;
+    }
+
+    public long getRandomState() {
+        return _randomState;
+    }
+
+    /**
+     * @return the id, that tells this checkpoint apart from all the others, even ones of the same tick,
+     * or 0 for a save of the player
+     */
+    public long getId() {
+        return _id;
+    }
+
+    public int getPlayerX() {
+        return _playerX;
+    }
+
+    public int getPlayerY() {
+        return _playerY;
+    }
+
+    public Direction getPlayerDirection() {
+        return _playerDirection;
+    }
+
+    public int getResets() {
+        return _resets;
+    }
+
+    public int getEnemyCount() {
+        return _enemyX.length;
+    }
+
+    // the columns are only read by the world, when it restores the save
+
+    int[] getEnemyX() {
+        return _enemyX;
+    }
+
+    int[] getEnemyY() {
+        return _enemyY;
+    }
+
+    byte[] getEnemyDirection() {
+        return _enemyDirection;
+    }
+
+    boolean[] getEnemyActivated() {
+        return _enemyActivated;
+    }
+
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+}
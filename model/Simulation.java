@@ -0,0 +1,194 @@
+package model;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import model.Replay.InputRecorder;
+import model.Replay.MoveJournal;
+
+/**
+ * Runs a {@link World} without any window. Moves are submitted up front and consumed one per tick,
+ * so a game can be stepped as fast as the CPU allows, e.g. on a server or in a benchmark.
+ * The keys of a player come in through the {@link InputQueue} instead, when no move was submitted.
+ * Nothing in here touches AWT or Swing.
+ * Reaching the end of a level is reported through {@link LevelListener}s, the simulation does not
+ * decide on its own which level comes next.
+ */
+public class Simulation {
+
+    private final World _world;
+
+    /** Moves, that were submitted but not yet played. Moves may be submitted from any thread. */
+    private final Queue<Direction> _moves = new ConcurrentLinkedQueue<>();
+
+    /** The keys of the player, that are pressed and held. */
+    private final InputQueue _input = new InputQueue();
+
+    private long _ticks;
+
+    private int _levelsCompleted;
+
+    /** Records the moves of every tick, if set. */
+    private InputRecorder _recorder;
+
+    /** Autosaves the moves of every tick, if set. */
+    private MoveJournal _journal;
+
+    /**
+     * Creates a new simulation, that starts in the given level, with a random seed.
+     * @param level the level to start in
+     */
+    public Simulation(Level level) {
+        this(level, System.nanoTime());
+    }
+
+    /**
+     * Creates a new simulation, that starts in the given level.
+     * @param level the level to start in
+     * @param seed the seed of the world. The same seed and the same moves give the same game
+     */
+    public Simulation(Level level, long seed) {
+        _world = new World(level, seed);
+        _world.addLevelListener(world -> _levelsCompleted++);
+    }
+
+    /**
+     * Queues a move of the player. Every tick plays at most one move.
+     * @param direction where the player should go
+     */
+    public void submit(Direction direction) {
+        _moves.add(direction);
+    }
+
+    /**
+     * Advances the world by one tick. If a move is queued or a key is pressed, the player makes it,
+     * otherwise only the enemies move.
+     */
+    public void tick() {
+        Level level = _world.getLevel();
+        Direction move = _moves.poll();
+        if (move == null) {
+            move = _input.next();
+        }
+        if (_recorder != null) {
+            _recorder.record(move);
+        }
+        if (move != null) {
+            _world.movePlayer(move);
+        } else {
+            _world.tick();
+        }
+        _ticks++;
+        if (_journal != null) {
+            if (_world.getLevel() != level) {
+                // a new level starts with a checkpoint, so a journal never goes on into another level
+                _journal.checkpoint(_world, _ticks);
+            } else {
+                _journal.record(move, _world, _ticks);
+            }
+        }
+    }
+
+    /**
+     * Advances the world by the given number of ticks.
+     * @param ticks how many ticks to run
+     */
+    public void step(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            tick();
+        }
+    }
+
+    /**
+     * Replaces the current level, e.g. from a {@link LevelListener}.
+     * @param level the level to play next
+     */
+    public void loadLevel(Level level) {
+        _world.newLevel(level);
+    }
+
+    /**
+     * Starts recording the moves of every tick from now on. Start it before the first tick, the recording
+     * only replays correctly from the start of the world.
+     * @param recorder the recorder, or null to stop recording
+     */
+    public void setRecorder(InputRecorder recorder) {
+        _recorder = recorder;
+    }
+
+    public InputRecorder getRecorder() {
+        return _recorder;
+    }
+
+    /**
+     * Starts autosaving every tick from now on. The world is saved as a checkpoint right away.
+     * Hold the lock of the world, if it is ticked on another thread.
+     * @param journal the journal, or null to stop autosaving
+     */
+    public void setJournal(MoveJournal journal) {
+        _journal = journal;
+        checkpoint();
+    }
+
+    /**
+     * Saves the world as a checkpoint of the autosave right away, e.g. after a game was loaded.
+     * Does nothing without a journal. Hold the lock of the world, if it is ticked on another thread.
+     */
+    public void checkpoint() {
+        if (_journal != null) {
+            _journal.checkpoint(_world, _ticks);
+        }
+    }
+
+    public MoveJournal getJournal() {
+        return _journal;
+    }
+
+    public void addLevelListener(LevelListener listener) {
+        _world.addLevelListener(listener);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Getters
+
+    public World getWorld() {
+        return _world;
+    }
+
+    /**
+     * @return where the window puts the keys of the player
+     */
+    public InputQueue getInput() {
+        return _input;
+    }
+
+    public long getTicks() {
+        return _ticks;
+    }
+
+    /**
+     * @param ticks how many ticks were played, e.g. after the game was restored from an autosave
+     */
+    public void setTicks(long ticks) {
+        _ticks = ticks;
+    }
+
+    /**
+     * @return the number of moves, that are still waiting to be played
+     */
+    public int getPendingMoves() {
+        return _moves.size();
+    }
+
+    public int getLevelsCompleted() {
+        return _levelsCompleted;
+    }
+
+    public int getPlayerX() {
+        return _world.getPlayerX();
+    }
+
+    public int getPlayerY() {
+        return _world.getPlayerY();
+    }
+}
@@ -0,0 +1,171 @@
+package model;
+
+import java.nio.LongBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A dense occupancy grid for the walls of a level. Every cell is a single bit, rows are padded
+ * to whole longs, so a lookup is one array access and never allocates anything.
+ * Iterating over the grid still hands out {@link Wall} records for code that wants to draw them.
+ */
+public class WallGrid implements WallLayer {
+
+    private final int _width;
+    private final int _height;
+    /** Number of longs per row. */
+    private final int _stride;
+    private final long[] _bits;
+
+    private int _count;
+
+    /**
+     * Creates an empty grid.
+     * @param width the number of cells in the X-axis
+     * @param height the number of cells in the Y-axis
+     */
+    public WallGrid(int width, int height) {
+        _width = width;
+        _height = height;
+        _stride = (width + 63) >>> 6;
+        _bits = new long[_stride * height];
+    }
+
+    /**
+     * Creates a grid out of a list of walls. Walls outside of the grid are ignored.
+     * @param width the number of cells in the X-axis
+     * @param height the number of cells in the Y-axis
+     * @param walls the walls to set
+     */
+    public WallGrid(int width, int height, Iterable<Wall> walls) {
+        this(width, height);
+        for (Wall wall : walls) {
+            set(wall.x(), wall.y(), true);
+        }
+    }
+
+    /**
+     * Creates a grid straight out of its bit-packed rows, e.g. from a level file.
+     * Padding bits behind the last column of a row are cleared.
+     * @param width the number of cells in the X-axis
+     * @param height the number of cells in the Y-axis
+     * @param words {@link #getStride()} longs per row, row by row
+     */
+    WallGrid(int width, int height, LongBuffer words) {
+        this(width, height);
+        words.get(_bits);
+        long padding = (width & 63) == 0 ? 0 : -1L << width;
+        for (int y = 0; y < height; y++) {
+            _bits[y * _stride + _stride - 1] &= ~padding;
+        }
+        for (long word : _bits) {
+            _count += Long.bitCount(word);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return _width;
+    }
+
+    @Override
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * @return the number of longs per row
+     */
+    int getStride() {
+        return _stride;
+    }
+
+    /**
+     * @return how many cells are walls.
+     */
+    public int getCount() {
+        return _count;
+    }
+
+    @Override
+    public boolean isWall(int x, int y) {
+        if (x < 0 || y < 0 || x >= _width || y >= _height) {
+            return false;
+        }
+        return (_bits[y * _stride + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Returns 64 cells of a row at once, bit i is the cell at x = index * 64 + i.
+     * @param y the row
+     * @param index the index of the long in the row
+     * @return the bits, 0 outside the grid
+     */
+    @Override
+    public long getWord(int y, int index) {
+        if (y < 0 || y >= _height || index < 0 || index >= _stride) {
+            return 0;
+        }
+        return _bits[y * _stride + index];
+    }
+
+    /**
+     * Sets or clears a wall. Cells outside the grid are ignored.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param wall true to place a wall, false to remove it
+     * @return true if the cell changed
+     */
+    public boolean set(int x, int y, boolean wall) {
+        if (x < 0 || y < 0 || x >= _width || y >= _height) {
+            return false;
+        }
+        int index = y * _stride + (x >>> 6);
+        long mask = 1L << x;
+        boolean old = (_bits[index] & mask) != 0;
+        if (old == wall) {
+            return false;
+        }
+        if (wall) {
+            _bits[index] |= mask;
+            _count++;
+        } else {
+            _bits[index] &= ~mask;
+            _count--;
+        }
+        return true;
+    }
+
+    /**
+     * Iterates over all walls, row by row. The records are created on the fly.
+     */
+    @Override
+    public Iterator<Wall> iterator() {
+        return new Iterator<>() {
+            private int _word = -1;
+            private long _current = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (_current == 0) {
+                    if (++_word >= _bits.length) {
+                        _word = _bits.length;
+                        return false;
+                    }
+                    _current = _bits[_word];
+                }
+                return true;
+            }
+
+            @Override
+            public Wall next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int bit = Long.numberOfTrailingZeros(_current);
+                _current &= _current - 1;
+                return new Wall((_word % _stride) * 64 + bit, _word / _stride);
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package model;
+
+/**
+ * Where the walls of a level are. The walls can be held completely in memory, like in the {@link WallGrid},
+ * or be loaded piece by piece, like in the {@link ChunkedWallLayer}. Iterating over a layer gives every wall.
+ */
+public interface WallLayer extends Iterable<Wall> {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Checks a cell. Everything outside the layer is not a wall.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return true if there is a wall at (x, y)
+     */
+    boolean isWall(int x, int y);
+
+    /**
+     * Returns 64 cells of a row at once, e.g. to count walls with a popcount. Layers, that hold their walls
+     * bit-packed, hand out their words, the default asks for every cell.
+     * @param y the row
+     * @param index the index of the long in the row
+     * @return the bits, bit i is the cell at x = index * 64 + i, 0 outside the layer
+     */
+    default long getWord(int y, int index) {
+        long bits = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (isWall(index * 64 + bit, y)) {
+                bits |= 1L << bit;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * A hint, that the cells around (x, y) will be needed soon. Layers, that load their walls lazily,
+     * can load them in advance. The default does nothing.
+     * @param x the x coordinate of the centre
+     * @param y the y coordinate of the centre
+     * @param radius how many cells around the centre will be needed
+     */
+    default void prefetch(int x, int y, int radius) {
+    }
+}
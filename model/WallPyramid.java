@@ -0,0 +1,253 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * How many walls there are in square blocks of a level, for blocks of 1, 2, 4, 8 ... fields.
+ * A view, that is zoomed out far, draws a block per pixel, shaded by how many walls it has,
+ * instead of drawing every wall.
+ * <p>
+ * Small blocks are counted straight out of the wall words, 64 fields at a time. From blocks of {@link #BASE_BLOCK}
+ * fields on, the counts are kept in layers like a mip map. A layer is cut into tiles of
+ * {@link #TILE_BLOCKS} x {@link #TILE_BLOCKS} blocks, and a tile is only counted, when a block of it is asked for,
+ * so the pyramid never holds an array as big as the level.
+ * <p>
+ * Tiles with blocks up to {@link #DIRECT_BLOCK} fields are counted straight out of the wall words with a popcount,
+ * row by row, so a {@link ChunkedWallLayer} only loads the chunks under the tile. Tiles with bigger blocks add up
+ * four tiles of the layer below. The tiles with blocks smaller than DIRECT_BLOCK are only needed for the part of
+ * the level, that is on the screen, at most {@link #MAX_SMALL_TILES} of them are kept. The others have a block
+ * per 4096 fields or less, they are kept for good.
+ * <p>
+ * The walls must not change, while the pyramid is used. It can be used by many threads at once, reading a tile,
+ * that is counted already, takes no lock.
+ */
+public class WallPyramid {
+
+    /** The size of the blocks of the first layer, smaller ones are counted every time. */
+    public static final int BASE_BLOCK = 8;
+
+    private static final int TILE_SHIFT = 6;
+    /** Blocks per side of a tile. */
+    private static final int TILE_BLOCKS = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_BLOCKS - 1;
+    /** Layers with blocks up to this size are counted out of the walls, bigger ones add up the layer below. */
+    private static final int DIRECT_BLOCK = 64;
+    /** How many tiles of the layers with blocks smaller than DIRECT_BLOCK are kept, 16 KiB each. */
+    private static final int MAX_SMALL_TILES = 1024;
+
+    private final WallLayer _walls;
+    private final int _width;
+    private final int _height;
+
+    /** The layers with the blocks of BASE_BLOCK, 2 * BASE_BLOCK ... fields, made when they are needed. */
+    private final AtomicReferenceArray<Layer> _layers = new AtomicReferenceArray<>(32);
+
+    // Only touched under the lock of the pyramid.
+
+    /** The small tiles, that are kept, oldest first, as the index of the layer << 32 | the index of the tile. */
+    private final long[] _smallTiles = new long[MAX_SMALL_TILES];
+    private int _smallCount;
+    private int _smallNext;
+
+    /**
+     * @param index the number of the layer, the block is BASE_BLOCK << index
+     * @param tiles the counted tiles, null if a tile was not counted yet, every tile holds the counts row by row
+     */
+    private record Layer(int index, int block, int width, int height, int tilesX, int tilesY,
+                         AtomicReferenceArray<int[]> tiles) {
+    }
+
+    public WallPyramid(WallLayer walls) {
+        _walls = walls;
+        _width = walls.getWidth();
+        _height = walls.getHeight();
+    }
+
+    public int getWidth() {
+        return _width;
+    }
+
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * @param block the size of the blocks in fields, a power of two
+     * @param blockX the block in x, the one with the fields from blockX * block on
+     * @param blockY the block in y
+     * @return the number of walls in the block. Blocks outside of the level have none
+     */
+    public int getCount(int block, int blockX, int blockY) {
+        if (blockX < 0 || blockY < 0 || (long) blockX * block >= _width || (long) blockY * block >= _height) {
+            return 0;
+        }
+        if (block < BASE_BLOCK) {
+            return count(block, blockX, blockY);
+        }
+        Layer layer = layer(block);
+        int[] counts = tile(layer, (blockY >>> TILE_SHIFT) * layer.tilesX() + (blockX >>> TILE_SHIFT));
+        return counts[((blockY & TILE_MASK) << TILE_SHIFT) + (blockX & TILE_MASK)];
+    }
+
+    /**
+     * @return how many fields of the block are inside of the level
+     */
+    public int getFields(int block, int blockX, int blockY) {
+        long x = (long) blockX * block;
+        long y = (long) blockY * block;
+        if (blockX < 0 || blockY < 0 || x >= _width || y >= _height) {
+            return 0;
+        }
+        return (int) (Math.min(block, _width - x) * Math.min(block, _height - y));
+    }
+
+    /**
+     * @return the number of blocks in a row, the last one may stick out of the level
+     */
+    public int getBlocksX(int block) {
+        return (int) (((long) _width + block - 1) / block);
+    }
+
+    public int getBlocksY(int block) {
+        return (int) (((long) _height + block - 1) / block);
+    }
+
+    private Layer layer(int block) {
+        int index = Integer.numberOfTrailingZeros(block / BASE_BLOCK);
+        Layer layer = _layers.get(index);
+        return layer != null ? layer : makeLayer(index);
+    }
+
+    private synchronized Layer makeLayer(int index) {
+        Layer layer = _layers.get(index);
+        if (layer == null) {
+            int block = BASE_BLOCK << index;
+            int width = getBlocksX(block);
+            int height = getBlocksY(block);
+            int tilesX = (width + TILE_MASK) >>> TILE_SHIFT;
+            int tilesY = (height + TILE_MASK) >>> TILE_SHIFT;
+            layer = new Layer(index, block, width, height, tilesX, tilesY, new AtomicReferenceArray<>(tilesX * tilesY));
+            _layers.set(index, layer);
+        }
+        return layer;
+    }
+
+    private int[] tile(Layer layer, int tile) {
+        int[] counts = layer.tiles().get(tile);
+        return counts != null ? counts : makeTile(layer, tile);
+    }
+
+    /**
+     * Counts a tile. A tile of small blocks, that is kept, may throw out the oldest one, whoever still
+     * reads that one, can go on, the counts never change.
+     */
+    private synchronized int[] makeTile(Layer layer, int tile) {
+        int[] counts = layer.tiles().get(tile);
+        if (counts != null) {
+            // another thread was faster
+            return counts;
+        }
+        counts = layer.block() <= DIRECT_BLOCK ? countTile(layer, tile) : addUp(layer, tile);
+        if (layer.block() < DIRECT_BLOCK) {
+            if (_smallCount == MAX_SMALL_TILES) {
+                long oldest = _smallTiles[_smallNext];
+                _layers.get((int) (oldest >>> 32)).tiles().set((int) oldest, null);
+            } else {
+                _smallCount++;
+            }
+            _smallTiles[_smallNext] = ((long) layer.index() << 32) | tile;
+            _smallNext = (_smallNext + 1) % MAX_SMALL_TILES;
+        }
+        layer.tiles().set(tile, counts);
+        return counts;
+    }
+
+    /**
+     * Counts the blocks of a tile out of the wall words, row by row. A tile starts at a whole word,
+     * its width is a multiple of 512 fields.
+     */
+    private int[] countTile(Layer layer, int tile) {
+        int block = layer.block();
+        int[] counts = new int[TILE_BLOCKS * TILE_BLOCKS];
+        int fromX = (tile % layer.tilesX()) * TILE_BLOCKS * block;
+        int fromY = (tile / layer.tilesX()) * TILE_BLOCKS * block;
+        int toX = (int) Math.min(_width, (long) fromX + TILE_BLOCKS * block);
+        int toY = (int) Math.min(_height, (long) fromY + TILE_BLOCKS * block);
+        int firstWord = fromX >>> 6;
+        int words = (toX - fromX + 63) >>> 6;
+        int parts = Math.max(1, 64 / block);
+        long mask = block >= 64 ? -1L : (1L << block) - 1;
+        for (int y = fromY; y < toY; y++) {
+            int row = ((y - fromY) / block) << TILE_SHIFT;
+            for (int word = 0; word < words; word++) {
+                long bits = _walls.getWord(y, firstWord + word);
+                if (bits == 0) {
+                    continue;
+                }
+                int first = row + word * 64 / block;
+                for (int part = 0; part < parts; part++) {
+                    counts[first + part] += Long.bitCount(bits & (mask << (part * block)));
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Adds up the four tiles of the layer below, that lie under a tile.
+     */
+    private int[] addUp(Layer layer, int tile) {
+        Layer below = layer(layer.block() / 2);
+        int[] counts = new int[TILE_BLOCKS * TILE_BLOCKS];
+        int tileX = tile % layer.tilesX();
+        int tileY = tile / layer.tilesX();
+        for (int dy = 0; dy < 2; dy++) {
+            for (int dx = 0; dx < 2; dx++) {
+                int belowX = 2 * tileX + dx;
+                int belowY = 2 * tileY + dy;
+                if (belowX >= below.tilesX() || belowY >= below.tilesY()) {
+                    continue;
+                }
+                int[] part = tile(below, belowY * below.tilesX() + belowX);
+                for (int y = 0; y < TILE_BLOCKS; y++) {
+                    int row = ((dy * TILE_BLOCKS + y) >>> 1) << TILE_SHIFT;
+                    for (int x = 0; x < TILE_BLOCKS; x++) {
+                        counts[row + ((dx * TILE_BLOCKS + x) >>> 1)] += part[(y << TILE_SHIFT) + x];
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the walls of a block, row by row.
+     */
+    private int count(int block, int blockX, int blockY) {
+        int fromX = blockX * block;
+        int toX = Math.min(_width, fromX + block);
+        int fromY = blockY * block;
+        int toY = Math.min(_height, fromY + block);
+        int count = 0;
+        for (int y = fromY; y < toY; y++) {
+            count += countRow(y, fromX, toX);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of walls in the row y from fromX to toX - 1
+     */
+    private int countRow(int y, int fromX, int toX) {
+        int count = 0;
+        int x = fromX;
+        while (x < toX) {
+            int bit = x & 63;
+            int bits = Math.min(64 - bit, toX - x);
+            long mask = bits == 64 ? -1L : ((1L << bits) - 1) << bit;
+            count += Long.bitCount(_walls.getWord(y, x >>> 6) & mask);
+            x += bits;
+        }
+        return count;
+    }
+}
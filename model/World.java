@@ -1,10 +1,16 @@
 package model;
 
+import java.awt.Dimension;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
-import controller.Labyrinth;
 import model.Enemies.Enemies;
+import model.Enemies.EnemyStore;
+import view.SnapshotView;
 import view.View;
+import view.ViewChannel;
 
 /**
  * The world is our model. It saves the bare minimum of information required to
@@ -13,6 +19,15 @@ import view.View;
  */
 public class World {
 
+    /** How many cells around the player the walls should be ready, see {@link WallLayer#prefetch(int, int, int)}. */
+    private static final int PREFETCH_RADIUS = 64;
+
+    /** How far chasing enemies can find the player. */
+    private static final int CHASE_RADIUS = 64;
+
+    /** More changed cells than this between two frames are drawn as a whole new screen anyway. */
+    private static final int MAX_CHANGES = 1024;
+
     /** The world's width. */
     private int width;
     /** The world's height. */
@@ -28,19 +43,72 @@ public class World {
 
     private int _endY;
 
-    private ArrayList<Wall> _walls;
+    private WallLayer _walls;
 
     /** Set of views registered to be notified of world updates. */
     private final ArrayList<View> views = new ArrayList<>();
 
+    /** The views, that get snapshots on threads of their own. */
+    private final ArrayList<ViewChannel> _channels = new ArrayList<>();
+
+    /** Counts the updates of the views, the number of the next snapshot. */
+    private long _ticks;
+
+    /**
+     * Counts the steps of the world, {@link #movePlayer(Direction)} and {@link #tick()} are one step each,
+     * even if the views are updated more than once in it, e.g. when the player is sent back to the start.
+     */
+    private long _steps;
+
+    /** Listeners, that are told when the end of the level is reached. */
+    private final ArrayList<LevelListener> levelListeners = new ArrayList<>();
+
+    /** Set once the listeners were told about the end, so they are told only once per level. */
+    private boolean _completed;
+
     private Level _level;
 
-    private ArrayList<Enemies> _enemies;
+    /** The enemies of the current level. The world has its own copy, the level keeps the start state. */
+    private EnemyStore _enemies;
+
+    /** Which cells are occupied by enemies. Kept in sync in {@link #moveEnemies()} and on every reset. */
+    private final EnemyIndex _enemyIndex = new EnemyIndex();
+
+    /** Counts the resets, so an enemy update that caused one can be recognised. */
+    private int _resets;
+
+    /** If set, the enemies are updated in parallel on this pool. */
+    private ForkJoinPool _enemyPool;
+
+    /** The seed of all the randomness in this world. */
+    private final long _seed;
+
+    /** The stream the enemies draw from. It is split off the world's seed. */
+    private final GameRandom _enemyRandom;
+
+    /** The way to the player, shared by all chasing enemies. */
+    private final FlowField _flowField = new FlowField(CHASE_RADIUS);
+
+    /** The cells, that changed since they were drawn last. */
+    private final DirtyCells _changes = new DirtyCells(MAX_CHANGES);
+
+    /** Long ways through the level, created when it is first needed. */
+    private HierarchicalPathfinder _pathfinder;
 
     /**
-     * Creates a new world with the given size.t
+     * Creates a new world with the given level and a random seed.
      */
     public World(Level level) {
+        this(level, System.nanoTime());
+    }
+
+    /**
+     * Creates a new world with the given level. Two worlds with the same level and seed behave
+     * exactly the same, as long as they get the same moves.
+     * @param level the level to start in
+     * @param seed the seed of all the randomness in the world
+     */
+    public World(Level level, long seed) {
         // Normally, we would check the arguments for proper values
         // Well...but you guys didn't and I am lazy, so we will see if i do that when i clean up around here...
         //TODO valueCheck N+ etc
@@ -58,7 +126,11 @@ public class World {
 
         this._level = level;
 
-        this._enemies = level.getEnemies();
+        this._enemies = new EnemyStore(level.getEnemies());
+        this._enemyIndex.rebuild(_enemies);
+
+        this._seed = seed;
+        this._enemyRandom = new GameRandom(seed).split();
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -134,10 +206,10 @@ public class World {
     }
 
     /**
-     * Returns the walls in an ArrayList.
-     * @return The walls in an ArrayList
+     * Returns the walls as a layer. It can be iterated to get every single wall.
+     * @return The walls of the current level
      */
-    public ArrayList<Wall> getWalls() {
+    public WallLayer getWalls() {
         return _walls;
     }
 
@@ -148,10 +220,84 @@ public class World {
         return _endY;
     }
 
-    public ArrayList<Enemies> getEnemies() {
+    /**
+     * Returns the enemies as a list of lightweight views into the enemy store.
+     * @return the enemies of the current level
+     */
+    public List<Enemies> getEnemies() {
+        return _enemies.asList();
+    }
+
+    public EnemyStore getEnemyStore() {
         return _enemies;
     }
 
+    /**
+     * Returns the distances to the player, that chasing enemies follow. It is computed again
+     * if the player moved since the last call.
+     * @return the flow field towards the player
+     */
+    public FlowField getFlowField() {
+        _flowField.update(this);
+        return _flowField;
+    }
+
+    /**
+     * @return the pathfinder for long ways through the current level
+     */
+    public HierarchicalPathfinder getPathfinder() {
+        if (_pathfinder == null) {
+            _pathfinder = new HierarchicalPathfinder(_walls);
+        }
+        return _pathfinder;
+    }
+
+    /**
+     * The next move on the way from the player to the end, e.g. to show the player where to go.
+     * @return the direction of the next move, or NONE if the player is at the end or can not reach it
+     */
+    public Direction getRouteHint() {
+        List<Direction> path = getPathfinder().findPath(_playerX, _playerY, _endX, _endY);
+        return path == null || path.isEmpty() ? Direction.NONE : path.get(0);
+    }
+
+    public long getSeed() {
+        return _seed;
+    }
+
+    /**
+     * The random stream of the enemies. Only the thread that ticks the world may draw from it.
+     * @return the random stream of the enemies
+     */
+    public GameRandom getEnemyRandom() {
+        return _enemyRandom;
+    }
+
+    public Level getLevel() {
+        return _level;
+    }
+
+    /**
+     * @return the number of the step of the world, that the views are updated for
+     */
+    public long getSteps() {
+        return _steps;
+    }
+
+    /**
+     * @return how often the player was sent back to the start in this level
+     */
+    public int getResets() {
+        return _resets;
+    }
+
+    /**
+     * @return true if the player reached the end of the level, that is played
+     */
+    public boolean isCompleted() {
+        return _completed;
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Player Management
 
@@ -161,11 +307,16 @@ public class World {
      * @param direction where to move.
      */
     public void movePlayer(Direction direction) {
+        _steps++;
         // The direction tells us exactly how much we need to move along
         // every direction
         _playerDirection = direction;
+        // the old field is drawn again even if the player does not get away, the direction changed
+        _changes.add(_playerX, _playerY);
         setPlayerX(getPlayerX() + direction.deltaX);
         setPlayerY(getPlayerY() + direction.deltaY);
+        _walls.prefetch(_playerX, _playerY, PREFETCH_RADIUS);
+        _changes.add(_playerX, _playerY);
         if(enemyChecker(_playerX, _playerY)){
             levelReset();
         }
@@ -173,6 +324,15 @@ public class World {
         updateViews();
     }
 
+    /**
+     * Advances the world by one step without moving the player. The enemies still move.
+     */
+    public void tick() {
+        _steps++;
+        moveEnemies();
+        updateViews();
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // View Management
 
@@ -188,29 +348,141 @@ public class World {
     }
 
     /**
-     * Updates all views by calling their {@link View#update(World)} methods.
+     * Adds a view, that gets snapshots of the world on a thread of its own, and hands it one right away.
+     * The world never waits for it, unless the policy is {@link ViewChannel.Policy#BLOCK}.
+     *
+     * @param view the view to be registered.
+     * @param policy what to do, when the view is slower than the world.
+     * @return the channel to the view, e.g. to see how many snapshots it skipped
+     */
+    public ViewChannel registerView(SnapshotView view, ViewChannel.Policy policy) {
+        ViewChannel channel = new ViewChannel(view, policy);
+        _channels.add(channel);
+        Dimension area = channel.getArea();
+        channel.offer(area == null ? snapshot() : snapshot(area.width, area.height));
+        return channel;
+    }
+
+    /**
+     * @return what the world looks like right now, a copy, that does not change anymore
+     */
+    public WorldSnapshot snapshot() {
+        return new WorldSnapshot(_ticks, _level, width, height, _playerX, _playerY, _playerDirection,
+                _endX, _endY, new EnemyStore(_enemies), _resets, _enemyRandom.getState(), 0, 0, width, height);
+    }
+
+    /**
+     * Takes a snapshot, that only holds the enemies in a part of the world around the player, e.g. for a view,
+     * that only shows that part. The enemies are looked up in the enemy index field by field, so it costs as
+     * much as the part is big, no matter how many enemies there are. There is one enemy in the snapshot
+     * for every field with enemies on it, without a direction.
+     * @param areaWidth the width of the part in fields
+     * @param areaHeight the height of the part in fields
+     * @return the snapshot, see {@link WorldSnapshot#areaStart(int, int, int)} for where the part starts
+     */
+    public WorldSnapshot snapshot(int areaWidth, int areaHeight) {
+        int areaX = WorldSnapshot.areaStart(_playerX, areaWidth, width);
+        int areaY = WorldSnapshot.areaStart(_playerY, areaHeight, height);
+        int maxX = Math.min(width, areaX + areaWidth) - 1;
+        int maxY = Math.min(height, areaY + areaHeight) - 1;
+        int cells = _enemyIndex.countInRegion(areaX, areaY, maxX, maxY);
+        int[] x = new int[cells];
+        int[] y = new int[cells];
+        byte[] type = new byte[cells];
+        int[] n = new int[1];
+        _enemyIndex.forEachInRegion(areaX, areaY, maxX, maxY, (cellX, cellY, count) -> {
+            x[n[0]] = cellX;
+            y[n[0]] = cellY;
+            type[n[0]] = _enemyIndex.typeAt(cellX, cellY);
+            n[0]++;
+        });
+        boolean[] activated = new boolean[n[0]];
+        Arrays.fill(activated, true);
+        EnemyStore enemies = new EnemyStore(Arrays.copyOf(x, n[0]), Arrays.copyOf(y, n[0]),
+                Arrays.copyOf(type, n[0]), activated);
+        return new WorldSnapshot(_ticks, _level, width, height, _playerX, _playerY, _playerDirection,
+                _endX, _endY, enemies, _resets, _enemyRandom.getState(), areaX, areaY, areaWidth, areaHeight);
+    }
+
+    /**
+     * Adds a listener, that is told whenever the player reaches the end of the level.
+     * It is up to the listener to load the next level.
+     *
+     * @param listener the listener to be registered.
+     */
+    public void addLevelListener(LevelListener listener) {
+        levelListeners.add(listener);
+    }
+
+    /**
+     * Updates all views by calling their {@link View#update(World)} methods, and hands one snapshot
+     * to all the views, that get them.
      */
     private void updateViews() {
+        _ticks++;
         for (View view : views) {
             view.update(this);
         }
+        // the whole world is only copied, if a view needs it, and only once for all of them
+        WorldSnapshot complete = null;
+        for (ViewChannel channel : _channels) {
+            Dimension area = channel.getArea();
+            if (area != null) {
+                channel.offer(snapshot(area.width, area.height));
+                continue;
+            }
+            if (complete == null) {
+                complete = snapshot();
+            }
+            channel.offer(complete);
+        }
         //If end was reached
-        if (this._playerX == this._endX && this._playerY == this._endY) {
-            Labyrinth.loadNextLevel();
+        if (!_completed && this._playerX == this._endX && this._playerY == this._endY) {
+            _completed = true;
+            for (LevelListener listener : levelListeners) {
+                listener.levelCompleted(this);
+            }
         }
     }
 
+    /**
+     * Marks a cell as changed, so views redraw it.
+     */
+    public void markChanged(int x, int y) {
+        _changes.add(x, y);
+    }
+
+    /**
+     * The cells, that changed since the last time they were drawn. Only one view may take them, it has to
+     * hold the lock of the world while it reads and clears them.
+     * @return the changed cells
+     */
+    public DirtyCells getChanges() {
+        return _changes;
+    }
+
     public boolean enemyChecker(int X, int Y){
-        for (Enemies e: _enemies){
-            if (e.getX() == X && e.getY() == Y){
-                return true;
-            }
-        }
-        return false;
+        return _enemyIndex.isOccupied(X, Y);
+    }
+
+    /**
+     * Counts the enemies in a rectangle of the world. Both corners are inclusive.
+     * @return the number of enemies in the region
+     */
+    public int enemiesInRegion(int minX, int minY, int maxX, int maxY){
+        return _enemyIndex.countInRegion(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Returns the index of cells occupied by enemies. It is only read, never written, from outside.
+     * @return the enemy index of the world
+     */
+    public EnemyIndex getEnemyIndex(){
+        return _enemyIndex;
     }
 
     public boolean noWallChecker(int X, int Y){
-        return (!_walls.contains(new Wall(X, Y)));
+        return !_walls.isWall(X, Y);
     }
 
     public boolean boundsChecker(int X, int Y){
@@ -227,31 +499,103 @@ public class World {
         this.width = level.getLenX();
         this.height = level.getLenY();
         this._walls = level.getWalls();
+        this._pathfinder = null;
 
         this._playerX = level.getStartX();
         this._playerY = level.getStartY();
         this._endX = level.getEndX();
         this._endY = level.getEndY();
-        this._enemies = level.getEnemies();
+        this._enemies = new EnemyStore(level.getEnemies());
+        this._enemyIndex.rebuild(_enemies);
+        this._completed = false;
+        _changes.markAll();
         for (View view : views) {
             view.newLevel(this);
         }
         updateViews();
     }
 
+    /**
+     * Puts the world into the state of a saved game. The level of the save has to be played already,
+     * see {@link #newLevel(Level)}.
+     * @param save the saved game
+     * @throws IllegalArgumentException if the save belongs to another level
+     */
+    public void restore(SaveGame save){
+        if (!save.matches(_level)) {
+            throw new IllegalArgumentException("The save game belongs to another level than " + _level.getName());
+        }
+        _enemies.restore(save.getEnemyX(), save.getEnemyY(), save.getEnemyDirection(), save.getEnemyActivated());
+        _enemyIndex.rebuild(_enemies);
+        _enemyRandom.setState(save.getRandomState());
+        _playerX = save.getPlayerX();
+        _playerY = save.getPlayerY();
+        _playerDirection = save.getPlayerDirection();
+        _resets = save.getResets();
+        _ticks = save.getTick();
+        // for the views a restored world is a step of its own
+        _steps++;
+        _completed = false;
+        _changes.markAll();
+        updateViews();
+    }
+
     public void levelReset(){
         _playerDirection = Direction.NONE;
         _playerX = _level.getStartX();
         _playerY = _level.getStartY();
-        for(Enemies enemy: this._enemies){
-            enemy.reset();
-        }
+        _enemies.resetAll();
+        _enemyIndex.rebuild(_enemies);
+        _resets++;
+        _changes.markAll();
         updateViews();
     }
 
     private void moveEnemies() {
-        for(Enemies e: this._enemies){
-            e.update(this);
+        if (_enemyPool != null) {
+            if (_enemies.hasType(EnemyStore.TYPE_CHASER)) {
+                // compute it here, the threads of the pool must only read it
+                _flowField.update(this);
+            }
+            if (_enemies.tickParallel(this, _enemyIndex, _enemyPool, _enemyRandom.nextLong())) {
+                levelReset();
+            }
+            return;
+        }
+        for (int i = 0; i < _enemies.size(); i++) {
+            updateEnemy(i);
+        }
+    }
+
+    /**
+     * Switches between the sequential and the parallel enemy update.
+     * The parallel one is deterministic no matter how many threads the pool has, see
+     * {@link EnemyStore#tickParallel(World, EnemyIndex, ForkJoinPool, long)}.
+     * @param pool the pool to update the enemies on, or null for the sequential update
+     */
+    public void setEnemyPool(ForkJoinPool pool) {
+        this._enemyPool = pool;
+    }
+
+    public ForkJoinPool getEnemyPool() {
+        return _enemyPool;
+    }
+
+    /**
+     * Updates a single enemy and keeps the enemy index in sync.
+     * @param i the index of the enemy in the enemy store
+     */
+    public void updateEnemy(int i) {
+        EnemyStore store = _enemies;
+        int oldX = store.getX(i);
+        int oldY = store.getY(i);
+        int resets = _resets;
+        store.update(i, this);
+        // after a reset the index was rebuilt already
+        if (resets == _resets && (oldX != store.getX(i) || oldY != store.getY(i))) {
+            _enemyIndex.move(oldX, oldY, store.getX(i), store.getY(i), store.getType(i));
+            _changes.add(oldX, oldY);
+            _changes.add(store.getX(i), store.getY(i));
         }
     }
 }
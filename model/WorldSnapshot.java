@@ -0,0 +1,188 @@
+package model;
+
+import model.Enemies.EnemyStore;
+
+/**
+ * What the world looked like after one tick. It never changes, so views can read it on any thread,
+ * for as long as they like, while the world goes on.
+ * <p>
+ * The walls are shared with the level, they do not change while it is played. Everything else is a copy.
+ * <p>
+ * A snapshot can hold all the enemies, or only the ones in a part of the world, that a view shows, see
+ * {@link World#snapshot(int, int)}. Copying all the enemies every tick would cost megabytes with lots of them,
+ * a view of the fields around the player only needs a few. Only a snapshot of the whole world can be saved.
+ */
+public final class WorldSnapshot {
+
+    private final long _tick;
+    private final Level _level;
+    private final int _width;
+    private final int _height;
+    private final int _playerX;
+    private final int _playerY;
+    private final Direction _playerDirection;
+    private final int _endX;
+    private final int _endY;
+    private final EnemyStore _enemies;
+    private final int _resets;
+    private final long _randomState;
+
+    /** The part of the world, the enemies were taken from. */
+    private final int _areaX;
+    private final int _areaY;
+    private final int _areaWidth;
+    private final int _areaHeight;
+
+    /**
+     * @param enemies the enemies, they are taken over, not copied
+     */
+    WorldSnapshot(long tick, Level level, int width, int height, int playerX, int playerY, Direction playerDirection,
+                  int endX, int endY, EnemyStore enemies, int resets, long randomState,
+                  int areaX, int areaY, int areaWidth, int areaHeight) {
+        _tick = tick;
+        _level = level;
+        _width = width;
+        _height = height;
+        _playerX = playerX;
+        _playerY = playerY;
+        _playerDirection = playerDirection;
+        _endX = endX;
+        _endY = endY;
+        _enemies = enemies;
+        _resets = resets;
+        _randomState = randomState;
+        _areaX = areaX;
+        _areaY = areaY;
+        _areaWidth = areaWidth;
+        _areaHeight = areaHeight;
+    }
+
+    /**
+     * Where a part of the world, that is centred on the player, starts, so it stays inside of the level
+     * as long as it is smaller than the level.
+     * @param player the x or y position of the player
+     * @param size the width or height of the part
+     * @param length the width or height of the level
+     * @return the x or y position of the first field of the part
+     */
+    public static int areaStart(int player, int size, int length) {
+        return Math.max(0, Math.min(length - size, player - size / 2));
+    }
+
+    /**
+     * @return how many ticks the world had made, when this was taken
+     */
+    public long getTick() {
+        return _tick;
+    }
+
+    /**
+     * @return the level, that was played. A view sees a new level by this changing
+     */
+    public Level getLevel() {
+        return _level;
+    }
+
+    public WallLayer getWalls() {
+        return _level.getWalls();
+    }
+
+    public int getWidth() {
+        return _width;
+    }
+
+    public int getHeight() {
+        return _height;
+    }
+
+    public int getPlayerX() {
+        return _playerX;
+    }
+
+    public int getPlayerY() {
+        return _playerY;
+    }
+
+    public Direction getPlayerDirection() {
+        return _playerDirection;
+    }
+
+    public int getEndX() {
+        return _endX;
+    }
+
+    public int getEndY() {
+        return _endY;
+    }
+
+    /**
+     * @return true if the snapshot holds all the enemies, not only the ones in a part of the world
+     */
+    public boolean isComplete() {
+        return _areaX == 0 && _areaY == 0 && _areaWidth >= _width && _areaHeight >= _height;
+    }
+
+    /**
+     * @return the first x position of the part of the world, the enemies are taken from
+     */
+    public int getAreaX() {
+        return _areaX;
+    }
+
+    public int getAreaY() {
+        return _areaY;
+    }
+
+    public int getAreaWidth() {
+        return _areaWidth;
+    }
+
+    public int getAreaHeight() {
+        return _areaHeight;
+    }
+
+    /**
+     * @return the number of enemies in the snapshot. If it only holds a part of the world, it is one per field,
+     * that has any enemies on it
+     */
+    public int getEnemyCount() {
+        return _enemies.size();
+    }
+
+    public int getEnemyX(int i) {
+        return _enemies.getX(i);
+    }
+
+    public int getEnemyY(int i) {
+        return _enemies.getY(i);
+    }
+
+    public byte getEnemyType(int i) {
+        return _enemies.getType(i);
+    }
+
+    /**
+     * @return the direction of an enemy, always NONE if the snapshot only holds a part of the world
+     */
+    public Direction getEnemyDirection(int i) {
+        return _enemies.getDirection(i);
+    }
+
+    public boolean isEnemyActivated(int i) {
+        return _enemies.isActivated(i);
+    }
+
+    /**
+     * @return how often the player was sent back to the start so far
+     */
+    public int getResets() {
+        return _resets;
+    }
+
+    /**
+     * @return the state of the random stream of the enemies, see {@link GameRandom#getState()}
+     */
+    public long getRandomState() {
+        return _randomState;
+    }
+}
@@ -5,6 +5,7 @@ public class keyPresses{
     private final String _key;
     private Integer _value;
     private final Runnable _command;
+    private final Runnable _release;
     private int _modifier;
 
     /**
@@ -17,9 +18,18 @@ public class keyPresses{
      *                 It has to be either 0 for no additional Key or InputEvent.SHIFT_MASK, InputEvent.CTRL_MASK etc.
      */
     public keyPresses(String key, Integer value, Runnable command, int modifier){
+        this(key, value, command, null, modifier);
+    }
+
+    /**
+     * The same as above, for keys that do something as long as they are held.
+     * @param release The command it has to trigger, when the key is released again.
+     */
+    public keyPresses(String key, Integer value, Runnable command, Runnable release, int modifier){
         _key = key;
         _value = value;
         _command = command;
+        _release = release;
         _modifier = modifier;
     }
 
@@ -35,6 +45,13 @@ public class keyPresses{
         return _command;
     }
 
+    /**
+     * @return the command for releasing the key, or null if releasing it does nothing
+     */
+    public Runnable getRelease(){
+        return _release;
+    }
+
     public int getModifier(){
         return _modifier;
     }
@@ -0,0 +1,133 @@
+package view;
+
+import java.awt.Dimension;
+
+/**
+ * The part of the level, that is on the screen. A level, that fits on the screen, is simply centered.
+ * A bigger one scrolls: the camera follows the player, as soon as the player leaves the middle of the screen,
+ * but never further than the frame around the level.
+ * <p>
+ * Positions are in pixels of the level, (0, 0) is the top left corner of the field (0, 0).
+ */
+public class Camera {
+
+    private final int _viewWidth;
+    private final int _viewHeight;
+    private final int _fieldWidth;
+    private final int _fieldHeight;
+
+    private int _levelWidth;
+    private int _levelHeight;
+
+    /** The pixel of the level, that is in the top left corner of the screen. */
+    private int _x;
+    private int _y;
+
+    /**
+     * @param viewWidth the width of the screen in pixels
+     * @param viewHeight the height of the screen in pixels
+     * @param field the size of a field in pixels
+     */
+    public Camera(int viewWidth, int viewHeight, Dimension field) {
+        _viewWidth = viewWidth;
+        _viewHeight = viewHeight;
+        _fieldWidth = field.width;
+        _fieldHeight = field.height;
+    }
+
+    /**
+     * Switches to a level of another size and looks at the given field.
+     */
+    public void setLevel(int lenX, int lenY, int fieldX, int fieldY) {
+        _levelWidth = lenX * _fieldWidth;
+        _levelHeight = lenY * _fieldHeight;
+        _x = clamp(fieldX * _fieldWidth + _fieldWidth / 2 - _viewWidth / 2, _levelWidth, _viewWidth, _fieldWidth);
+        _y = clamp(fieldY * _fieldHeight + _fieldHeight / 2 - _viewHeight / 2, _levelHeight, _viewHeight, _fieldHeight);
+    }
+
+    /**
+     * Moves the camera just as far as needed to keep the player in the middle half of the screen.
+     * @param fieldX the field of the player, it may be between two fields
+     * @param fieldY the field of the player, it may be between two fields
+     * @return true if the camera moved
+     */
+    public boolean follow(double fieldX, double fieldY) {
+        int x = follow(_x, (int) Math.round(fieldX * _fieldWidth), _fieldWidth, _viewWidth);
+        int y = follow(_y, (int) Math.round(fieldY * _fieldHeight), _fieldHeight, _viewHeight);
+        x = clamp(x, _levelWidth, _viewWidth, _fieldWidth);
+        y = clamp(y, _levelHeight, _viewHeight, _fieldHeight);
+        boolean moved = x != _x || y != _y;
+        _x = x;
+        _y = y;
+        return moved;
+    }
+
+    /**
+     * @return what has to be added to a pixel of the level to get the pixel on the screen
+     */
+    public int getOffSetX() {
+        return -_x;
+    }
+
+    public int getOffSetY() {
+        return -_y;
+    }
+
+    public int getX() {
+        return _x;
+    }
+
+    public int getY() {
+        return _y;
+    }
+
+    public int getViewWidth() {
+        return _viewWidth;
+    }
+
+    public int getViewHeight() {
+        return _viewHeight;
+    }
+
+    /**
+     * The fields on the screen, and some more around it. They may be outside of the level.
+     * @param margin how many fields more on every side
+     */
+    public int getMinFieldX(int margin) {
+        return Math.floorDiv(_x, _fieldWidth) - margin;
+    }
+
+    public int getMinFieldY(int margin) {
+        return Math.floorDiv(_y, _fieldHeight) - margin;
+    }
+
+    public int getMaxFieldX(int margin) {
+        return Math.floorDiv(_x + _viewWidth, _fieldWidth) + margin;
+    }
+
+    public int getMaxFieldY(int margin) {
+        return Math.floorDiv(_y + _viewHeight, _fieldHeight) + margin;
+    }
+
+    private static int follow(int camera, int player, int field, int view) {
+        int low = camera + view / 4;
+        int high = camera + view - view / 4 - field;
+        if (player < low) {
+            return camera - (low - player);
+        }
+        if (player > high) {
+            return camera + (player - high);
+        }
+        return camera;
+    }
+
+    /**
+     * Keeps the frame around the level on the screen, or centers the level if it is smaller than the screen.
+     */
+    private static int clamp(int camera, int level, int view, int field) {
+        if (level + 2 * field <= view) {
+            return (level - view) / 2;
+        }
+        return Math.max(-field, Math.min(level + field - view, camera));
+    }
+}
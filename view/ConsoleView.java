@@ -1,59 +1,192 @@
 package view;
 
-import model.Enemies.Enemies;
-import model.Wall;
-import model.World;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
-import java.util.ArrayList;
+import model.Level;
+import model.WallLayer;
+import model.WorldSnapshot;
 
 /**
  * A view that prints the current state of the world to the console upon every
  * update.
+ * <p>
+ * It shows the part of the level around the player, that fits into the terminal. It gets snapshots of the world
+ * on a thread of its own, register it with {@link ViewChannel.Policy#COALESCE}, then a terminal, that is slower
+ * than the game, just skips frames. Every frame is compared to the one printed before, and only the cells,
+ * that changed, are written, with ANSI escape codes to move the cursor there, all in one write.
  */
-public class ConsoleView implements View {
+public class ConsoleView implements SnapshotView {
+
+    private static final String ESC = "\u001b[";
+
+    /** Changed cells closer than this in a row are written together, that is shorter than moving the cursor. */
+    private static final int MAX_GAP = 4;
+
+    private final OutputStream _out;
+    private final int _columns;
+    private final int _rows;
+
+    /** The frame, that is filled next. */
+    private char[] _frame;
+    /** What the terminal shows, null before the first frame. */
+    private char[] _shown;
+    /** Nothing is printed anymore, after the output failed. */
+    private boolean _closed;
+
+    /**
+     * Prints to the standard output, as big as the terminal says it is, or 80 x 24.
+     */
+    public ConsoleView() {
+        this(System.out, size("COLUMNS", 80), size("LINES", 24));
+    }
+
+    /**
+     * @param out where the frames are written to
+     * @param columns how many cells wide the terminal is
+     * @param rows how many cells high the terminal is
+     */
+    public ConsoleView(OutputStream out, int columns, int rows) {
+        _out = out;
+        _columns = columns;
+        _rows = rows;
+        _frame = new char[columns * rows];
+    }
 
     @Override
-    public void update(World world) {
+    public void update(WorldSnapshot snapshot) {
+        if (_closed) {
+            return;
+        }
+        capture(snapshot, _frame);
+        try {
+            print(_frame);
+        } catch (IOException e) {
+            // nobody is listening anymore
+            _closed = true;
+            return;
+        }
+        // the frame is shown now, the one before can be filled again
+        char[] old = _shown;
+        _shown = _frame;
+        _frame = old != null ? old : new char[_columns * _rows];
+    }
+
+    /**
+     * Copies the part of the world around the player into a frame.
+     */
+    private void capture(WorldSnapshot snapshot, char[] frame) {
         // The player's position
-        int playerX = world.getPlayerX();
-        int playerY = world.getPlayerY();
-
-        for (int row = 0; row < world.getHeight(); row++) {
-            for (int col = 0; col < world.getWidth(); col++) {
-                // If the player is here, print #, otherwise print .
-                if (row == playerY && col == playerX) {
-                    System.out.print("#");
-                } else if (world.getWalls().contains(new Wall(row, col))){
-                    System.out.print("W");
-                } else if (col == world.getEndX() && row == world.getEndY()){
-                    System.out.print("T");
-                }else if (isEnemy(world.getEnemies(), col, row)){
-                    System.out.print("E");
-                }else {
-                    System.out.print(".");
+        int playerX = snapshot.getPlayerX();
+        int playerY = snapshot.getPlayerY();
+        int width = snapshot.getWidth();
+        int height = snapshot.getHeight();
+        int originX = WorldSnapshot.areaStart(playerX, _columns, width);
+        int originY = WorldSnapshot.areaStart(playerY, _rows, height);
+        Level level = snapshot.getLevel();
+        WallLayer walls = level.getWalls();
+
+        for (int row = 0; row < _rows; row++) {
+            int y = originY + row;
+            for (int col = 0; col < _columns; col++) {
+                int x = originX + col;
+                char cell;
+                if (x >= width || y >= height) {
+                    cell = ' ';
+                } else if (walls.isWall(x, y)) {
+                    cell = 'W';
+                } else {
+                    cell = '.';
                 }
+                frame[row * _columns + col] = cell;
             }
-
-            // A newline after every row
-            System.out.println();
         }
-
-        // A newline between every update
-        System.out.println();
+        // enemies on the open fields, then the end and the player on top of them.
+        // the snapshot only holds the enemies of this part, see getArea()
+        for (int i = 0; i < snapshot.getEnemyCount(); i++) {
+            int cell = cell(snapshot.getEnemyX(i) - originX, snapshot.getEnemyY(i) - originY);
+            if (cell >= 0 && frame[cell] == '.') {
+                frame[cell] = 'E';
+            }
+        }
+        int end = cell(snapshot.getEndX() - originX, snapshot.getEndY() - originY);
+        if (end >= 0 && frame[end] != 'W') {
+            frame[end] = 'T';
+        }
+        int player = cell(playerX - originX, playerY - originY);
+        if (player >= 0) {
+            frame[player] = '#';
+        }
     }
 
+    /**
+     * Only the fields, that fit into the terminal, are shown, so only their enemies are needed.
+     */
     @Override
-    public void newLevel(World world) {
-        update(world);
+    public Dimension getArea() {
+        return new Dimension(_columns, _rows);
     }
 
-    private Boolean isEnemy(ArrayList<Enemies> enemies, int x, int y){
-        for (Enemies e : enemies) {
-            if (e.getX() == x && e.getY() == y){
-                return true;
+    /**
+     * @return where a cell of the terminal is in the frame, or -1 if it is not on the terminal
+     */
+    private int cell(int col, int row) {
+        if (col < 0 || row < 0 || col >= _columns || row >= _rows) {
+            return -1;
+        }
+        return row * _columns + col;
+    }
+
+    /**
+     * Writes the cells, that differ from what the terminal shows, in one go.
+     */
+    private void print(char[] frame) throws IOException {
+        StringBuilder out = new StringBuilder();
+        if (_shown == null) {
+            // hide the cursor and start with an empty screen
+            out.append(ESC).append("?25l").append(ESC).append("2J");
+        }
+        for (int row = 0; row < _rows; row++) {
+            int start = row * _columns;
+            int col = 0;
+            while (col < _columns) {
+                if (!changed(frame, start + col)) {
+                    col++;
+                    continue;
+                }
+                // a run of changed cells, small gaps of unchanged ones are written along
+                int from = col;
+                int to = col;
+                while (col < _columns && col - to <= MAX_GAP) {
+                    if (changed(frame, start + col)) {
+                        to = col;
+                    }
+                    col++;
+                }
+                out.append(ESC).append(row + 1).append(';').append(from + 1).append('H');
+                out.append(frame, start + from, to - from + 1);
             }
         }
-        return false;
+        if (out.isEmpty()) {
+            return;
+        }
+        out.append(ESC).append(_rows + 1).append(";1H");
+        _out.write(out.toString().getBytes(StandardCharsets.US_ASCII));
+        _out.flush();
     }
 
+    private boolean changed(char[] frame, int cell) {
+        return _shown == null || _shown[cell] != frame[cell];
+    }
+
+    private static int size(String variable, int otherwise) {
+        try {
+            String value = System.getenv(variable);
+            return value != null ? Integer.parseInt(value.trim()) : otherwise;
+        } catch (NumberFormatException e) {
+            return otherwise;
+        }
+    }
 }
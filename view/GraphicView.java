@@ -2,43 +2,125 @@ package view;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.JPanel;
 
 import controller.Controller;
-import model.Enemies.Enemies;
-import model.Wall;
+import model.Direction;
+import model.DirtyCells;
+import model.EnemyIndex;
+import model.Enemies.EnemyStore;
+import model.Level;
+import model.WallLayer;
+import model.WallPyramid;
 import model.World;
 
 /**
  * A graphical view of the world.
+ * Levels bigger than the screen scroll, the {@link Camera} follows the player. Only what is on the screen,
+ * and a small margin around it, is ever drawn, so the cost depends on the size of the screen and not of the level.
+ * The background comes out of a {@link TileCache}, so the memory does not depend on the size of the level either.
+ * <p>
+ * The view can be zoomed out until the whole level fits on the screen. Up close the fields are drawn with sprites,
+ * further out a field is just a few pixels, and even further a pixel is a block of fields. Those tiles are shaded
+ * out of a {@link WallPyramid}, so they cost the same, no matter how many walls a pixel stands for.
  */
 public class GraphicView extends JPanel implements View {
 
+    /** With more changed cells than this, one repaint of everything is cheaper than many small ones. */
+    private static final int MAX_DIRTY_CELLS = 256;
+
+    /** How many fields wide and high a tile of the background is, at the closest zoom. */
+    private static final int TILE_FIELDS = 16;
+
+    /** What is drawn where a tile is not rendered yet. */
+    private static final Color PLACEHOLDER = new Color(32, 32, 32);
+
+    /** How many fields past the screen enemies are still drawn, they might slide onto the screen. */
+    private static final int ENEMY_MARGIN = 2;
+
+    /** Fields smaller than this many pixels are drawn without sprites. */
+    private static final int MIN_SPRITE_FIELD = 4;
+
+    /** The biggest block of fields, that a pixel can stand for. */
+    private static final int MAX_BLOCK = 1 << 20;
+
+    /** How many pixels the player sticks out of its field, when there are no sprites, so it can still be found. */
+    private static final int PLAYER_MARKER = 1;
+
     /** The width of the level in pixels. */
     private int WIDTH;
     /** The height of the level in pixels. */
     private int HEIGHT;
 
-    /** Offset in Pixels, so the game is centered */
+    /**
+     * Offset in Pixels, from the level to the screen. It is taken from the camera.
+     * Like the camera, only touched while holding the lock of the world.
+     */
     private int _offSetX;
     private int _offSetY;
 
-    /** Actual screen size in pixels */
-    private int screenSizeX;
-    private int screenSizeY;
+    /** The part of the level on the screen. Null until the screen size is known */
+    private Camera _camera;
+
+    /** The zoom and the offset for the threads, that do not hold the lock of the world, like the tile workers. */
+    private volatile Placement _placement = new Placement(0, 0, 0);
+
+    /** Actual screen size in pixels. It is also read by the thread, that prepares the next level */
+    private volatile int screenSizeX;
+    private volatile int screenSizeY;
 
     /**
      * The dimension, that regulates the scaling in the x and y coordinates:
-     * Basically how big the fields are stretched
+     * Basically how big the fields are stretched, at the closest zoom
      */
     private Dimension fieldDimension;
 
+    /** All zoom levels, from the closest one on. */
+    private volatile List<Zoom> _zooms;
+    /** The zoom level, that is shown. */
+    private volatile Zoom _zoom;
+
     private Controller _controller;
 
     private World _world;
 
-    private BufferedImage backGround;
+    /**
+     * The background in tiles. The tiles are images in the format of the screen, so Java2D keeps them
+     * in video memory by itself.
+     */
+    private final TileCache _tiles;
+    /** Where the camera was, when the cache was last told which tiles are needed. */
+    private int _wantedCameraX = Integer.MIN_VALUE;
+    private int _wantedCameraY;
+    private int _wantedZoom;
+
+    /**
+     * Where everything was at the last two ticks, so an active renderer can draw the enemies and the player
+     * on their way between two fields. Only touched while holding the lock of the world.
+     */
+    private int[] _previousX = new int[0];
+    private int[] _previousY = new int[0];
+    private int[] _currentX = new int[0];
+    private int[] _currentY = new int[0];
+    private byte[] _types = new byte[0];
+    private int _enemyCount;
+    /** The enemies, that were close enough to the screen at the last tick to be drawn. */
+    private int[] _visible = new int[0];
+    private int _visibleCount;
+    private int _previousPlayerX;
+    private int _previousPlayerY;
+    /** The step of the world and the resets, the current positions were taken at. */
+    private long _step = -1;
+    private int _resets;
+
+    /** The tiles, that were rendered in advance for a level, that is not played yet. */
+    private volatile PreparedBackGround _prepared;
+
+    /** The rectangles of the changed cells of the current render pass, x, y, width and height each. */
+    private final int[] _dirtyRects = new int[4 * MAX_DIRTY_CELLS];
 
     /**
      * The constructor of GraphicView
@@ -52,143 +134,716 @@ public class GraphicView extends JPanel implements View {
         this.HEIGHT = height;
         this.fieldDimension = fieldDimension;
         this._world = world;
-        _wall.setSize(fieldDimension);
+        this._zooms = buildZooms(fieldDimension, null);
+        this._zoom = _zooms.get(0);
+        this._tiles = new TileCache(TILE_FIELDS * fieldDimension.width, TILE_FIELDS * fieldDimension.height, 16, this::tileReady);
         this.setVisible(true);
     }
 
     public void setController(Controller controller){
         _controller = controller;
-        calcScreenSize();
+        // now the screen is known, so the sprites can be made for it
+        List<Zoom> zooms = buildZooms(fieldDimension, _controller.getGraphicsConfiguration());
+        synchronized (_world) {
+            _zooms = zooms;
+            _zoom = _zooms.get(_zoom.index());
+            calcScreenSize();
+        }
         repaint();
     }
 
     private void calcScreenSize(){
         this.screenSizeX = _controller.getGraphicsConfiguration().getBounds().width;
         this.screenSizeY = _controller.getGraphicsConfiguration().getBounds().height;
+        _tiles.setCapacity(tileCapacity());
         calcOffSet();
     }
 
     private void calcOffSet() {
-        this._offSetX = (screenSizeX - this.WIDTH) / 2;
-        this._offSetY = (screenSizeY - this.HEIGHT) / 2;
+        Zoom zoom = _zoom;
+        _camera = new Camera(screenSizeX, screenSizeY, zoom.field());
+        _camera.setLevel(zoom.blocks(_world.getWidth()), zoom.blocks(_world.getHeight()),
+                _world.getPlayerX() / zoom.block(), _world.getPlayerY() / zoom.block());
+        takeOffSet();
     }
 
-    /** The rectangle we're moving. */
-    private final Rectangle player = new Rectangle(1, 1);
+    /**
+     * Lets the camera follow the player.
+     * @return true if the camera moved, then everything on the screen moved
+     */
+    private boolean followPlayer(double fieldX, double fieldY) {
+        int block = _zoom.block();
+        if (_camera == null || !_camera.follow(fieldX / block, fieldY / block)) {
+            return false;
+        }
+        takeOffSet();
+        return true;
+    }
 
-    /** The Wall */
-    private final Rectangle _wall = new Rectangle(1, 1);
+    private void takeOffSet() {
+        this._offSetX = _camera.getOffSetX();
+        this._offSetY = _camera.getOffSetY();
+        _placement = new Placement(_zoom.index(), _offSetX, _offSetY);
+    }
 
     /**
-     * Creates a new instance.
+     * Where the level is on the screen, all at once, so a thread without the lock of the world never sees
+     * the offset of one zoom level together with another zoom level.
      */
-    @Override
-    public void paint(Graphics g) {
-        // Paint buffered background: Does it only at the first update or when some parameter changes,
-        // then it loads it out of memory, to save some resources
-        if (backGround == null || backGround.getWidth() != this.screenSizeX || backGround.getHeight() != this.screenSizeY) {
-            drawBackGround();
+    private record Placement(int zoom, int offSetX, int offSetY) {
+    }
+
+    /**
+     * A zoom level.
+     * @param index where it is in the list of zoom levels, 0 is the closest
+     * @param fieldWidth how many pixels wide a field, or a block of fields, is
+     * @param fieldHeight how many pixels high a field, or a block of fields, is
+     * @param block how many fields wide and high a block is, 1 if a pixel is not more than a field
+     * @param atlas the sprites, null if the fields are too small for sprites
+     */
+    private record Zoom(int index, int fieldWidth, int fieldHeight, int block, SpriteAtlas atlas) {
+
+        /**
+         * @return how many blocks a row or a column of fields has, the last one may not be full
+         */
+        int blocks(int fields) {
+            return (int) (((long) fields + block - 1) / block);
+        }
+
+        Dimension field() {
+            return new Dimension(fieldWidth, fieldHeight);
+        }
+    }
+
+    /**
+     * The fields get half as big with every zoom level, as long as there is room for sprites. Then a field is two pixels,
+     * then one, and from then on a pixel stands for twice as many fields with every zoom level.
+     */
+    private static List<Zoom> buildZooms(Dimension field, GraphicsConfiguration configuration) {
+        ArrayList<Zoom> zooms = new ArrayList<>();
+        int width = field.width;
+        int height = field.height;
+        while (zooms.isEmpty() || Math.min(width, height) >= MIN_SPRITE_FIELD) {
+            zooms.add(new Zoom(zooms.size(), width, height, 1, new SpriteAtlas(new Dimension(width, height), configuration)));
+            width /= 2;
+            height /= 2;
+        }
+        for (int size = Math.min(2, Math.min(width, height)); size >= 1; size--) {
+            zooms.add(new Zoom(zooms.size(), size, size, 1, null));
+        }
+        for (int block = 2; block <= MAX_BLOCK; block *= 2) {
+            zooms.add(new Zoom(zooms.size(), 1, 1, block, null));
+        }
+        return zooms;
+    }
+
+    /**
+     * @return the zoom level, from which on the whole level with its frame fits on the screen
+     */
+    private int maxZoom(int lenX, int lenY) {
+        List<Zoom> zooms = _zooms;
+        if (screenSizeX <= 0 || screenSizeY <= 0) {
+            return 0;
+        }
+        for (Zoom zoom : zooms) {
+            if ((zoom.blocks(lenX) + 2L) * zoom.fieldWidth() <= screenSizeX
+                    && (zoom.blocks(lenY) + 2L) * zoom.fieldHeight() <= screenSizeY) {
+                return zoom.index();
+            }
+        }
+        return zooms.size() - 1;
+    }
+
+    public void zoomIn() {
+        setZoom(_zoom.index() - 1);
+    }
+
+    public void zoomOut() {
+        setZoom(_zoom.index() + 1);
+    }
+
+    /**
+     * Switches to another zoom level, the camera stays on the player. It does not zoom out further,
+     * than needed to see the whole level. Has to run on the EDT.
+     * @param index the zoom level, 0 is the closest
+     */
+    public void setZoom(int index) {
+        synchronized (_world) {
+            index = Math.max(0, Math.min(maxZoom(_world.getWidth(), _world.getHeight()), index));
+            if (index == _zoom.index()) {
+                return;
+            }
+            _zoom = _zooms.get(index);
+            calcOffSet();
+            findVisibleEnemies();
         }
-        //actually drawing the background
-        g.drawImage(backGround, 0, 0, screenSizeX, screenSizeY, null);
+        repaint();
+    }
+
+    public int getZoom() {
+        return _zoom.index();
+    }
 
-        drawEnemies(g);
+    /** The field of the player, at the last update. */
+    private final Rectangle player = new Rectangle(1, 1);
 
-        // draw player
-        drawThePlayer(g);
+    /**
+     * Paints the part of the screen, that is inside the clip. For a single changed cell that is just the cell.
+     */
+    @Override
+    public void paint(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, screenSizeX, screenSizeY);
+        }
+        // the simulation thread must not move anything while we draw it
+        synchronized (_world) {
+            Zoom zoom = _zoom;
+            // the tiles around the screen are rendered in advance, then scrolling onto them is free
+            wantTiles(zoom);
+            //actually drawing the background, only the part, that is painted again
+            drawBackGround(g, zoom, clip);
+
+            drawEnemies(g, zoom, clip);
+
+            // draw player
+            drawPlayer(g, zoom, _world.getPlayerDirection(),
+                    toPixel(player.x, zoom.block(), zoom.fieldWidth()) + _offSetX,
+                    toPixel(player.y, zoom.block(), zoom.fieldHeight()) + _offSetY);
+        }
     }
 
     @Override
     public void update(World world) {
-        // Update players size and location
-        player.setSize(fieldDimension);
-        player.setLocation(
-                (int) (world.getPlayerX() * fieldDimension.width),
-                (int) (world.getPlayerY() * fieldDimension.height)
-        );
-        repaint();
+        // before the player moves, it still shows the last field
+        rememberPositions(world);
+        player.setLocation(world.getPlayerX(), world.getPlayerY());
+        // no repaint here, the render pass of the game loop paints at display rate
+    }
+
+    /**
+     * Keeps the positions of the last tick and takes the ones of this tick. The world may update its views
+     * more than once in a tick, only the first update of a tick keeps the last positions, the others only
+     * take the current ones again.
+     */
+    private void rememberPositions(World world) {
+        EnemyStore enemies = world.getEnemyStore();
+        int count = enemies.size();
+        if (_currentX.length < count) {
+            _previousX = new int[count];
+            _previousY = new int[count];
+            _currentX = new int[count];
+            _currentY = new int[count];
+            _types = new byte[count];
+        }
+        boolean nextStep = world.getSteps() != _step;
+        if (nextStep) {
+            _step = world.getSteps();
+            int[] swap = _previousX;
+            _previousX = _currentX;
+            _currentX = swap;
+            swap = _previousY;
+            _previousY = _currentY;
+            _currentY = swap;
+            _previousPlayerX = player.x;
+            _previousPlayerY = player.y;
+        }
+        for (int i = 0; i < count; i++) {
+            _currentX[i] = enemies.getX(i);
+            _currentY[i] = enemies.getY(i);
+            _types[i] = enemies.getType(i);
+        }
+        if (Math.abs(world.getPlayerX() - _previousPlayerX) > 1 || Math.abs(world.getPlayerY() - _previousPlayerY) > 1) {
+            // the player jumped, e.g. back to the start, the camera jumps with it before the enemies are picked
+            followPlayer(world.getPlayerX(), world.getPlayerY());
+        }
+        if (count != _enemyCount || world.getResets() != _resets) {
+            // a new level or a reset, the enemies did not walk there
+            _enemyCount = count;
+            _resets = world.getResets();
+            forgetPreviousPositions(world);
+        } else {
+            findVisibleEnemies();
+        }
+    }
+
+    /**
+     * Picks the enemies, that are close enough to the screen to be drawn until the next tick.
+     * This goes through all enemies once per tick, so the frames only go through the visible ones.
+     */
+    private void findVisibleEnemies() {
+        if (_visible.length < _enemyCount) {
+            _visible = new int[_currentX.length];
+        }
+        int count = 0;
+        for (int i = 0; i < _enemyCount; i++) {
+            if (_camera == null || isNearScreen(_currentX[i], _currentY[i]) || isNearScreen(_previousX[i], _previousY[i])) {
+                _visible[count++] = i;
+            }
+        }
+        _visibleCount = count;
+    }
+
+    private boolean isNearScreen(int x, int y) {
+        int block = _zoom.block();
+        return x >= _camera.getMinFieldX(ENEMY_MARGIN) * block && x < (_camera.getMaxFieldX(ENEMY_MARGIN) + 1) * block
+                && y >= _camera.getMinFieldY(ENEMY_MARGIN) * block && y < (_camera.getMaxFieldY(ENEMY_MARGIN) + 1) * block;
+    }
+
+    /**
+     * Makes the last tick look like this one, e.g. in a new level there is nothing to slide from.
+     */
+    private void forgetPreviousPositions(World world) {
+        System.arraycopy(_currentX, 0, _previousX, 0, _enemyCount);
+        System.arraycopy(_currentY, 0, _previousY, 0, _enemyCount);
+        _previousPlayerX = world.getPlayerX();
+        _previousPlayerY = world.getPlayerY();
+        findVisibleEnemies();
     }
 
+    /**
+     * Draws a whole frame for active rendering: the background, and the enemies and the player between their
+     * last and their current field. The camera follows the sliding player, so scrolling is smooth as well.
+     * Can be called from any thread, it holds the lock of the world while drawing.
+     * @param g where to draw, in the coordinates of this view
+     * @param alpha how far the time is between the last tick and the next one, from 0 to 1
+     */
+    public void renderFrame(Graphics g, double alpha) {
+        synchronized (_world) {
+            Zoom zoom = _zoom;
+            double playerX = slide(_previousPlayerX, _world.getPlayerX(), alpha);
+            double playerY = slide(_previousPlayerY, _world.getPlayerY(), alpha);
+            followPlayer(playerX, playerY);
+            wantTiles(zoom);
+            drawBackGround(g, zoom, new Rectangle(0, 0, screenSizeX, screenSizeY));
+            for (int v = 0; v < _visibleCount; v++) {
+                int i = _visible[v];
+                drawEnemy(g, zoom, _types[i],
+                        toPixel(slide(_previousX[i], _currentX[i], alpha), zoom.block(), zoom.fieldWidth()) + _offSetX,
+                        toPixel(slide(_previousY[i], _currentY[i], alpha), zoom.block(), zoom.fieldHeight()) + _offSetY);
+            }
+            drawPlayer(g, zoom, _world.getPlayerDirection(),
+                    toPixel(playerX, zoom.block(), zoom.fieldWidth()) + _offSetX,
+                    toPixel(playerY, zoom.block(), zoom.fieldHeight()) + _offSetY);
+        }
+    }
+
+    /**
+     * @return the position between two fields. Jumps of more than one field, like after a reset, are not slid.
+     */
+    private static double slide(int from, int to, double alpha) {
+        if (Math.abs(to - from) > 1) {
+            return to;
+        }
+        return from + (to - from) * alpha;
+    }
+
+    /**
+     * @return the pixel of the level, where a field is. Zoomed out far, that is the pixel of its block
+     */
+    private static int toPixel(double field, int block, int fieldSize) {
+        if (block == 1) {
+            return (int) Math.round(field * fieldSize);
+        }
+        return (int) Math.floor(field / block) * fieldSize;
+    }
+
+    /**
+     * The render pass. Paints only the cells, that changed since the last pass, or the whole screen if
+     * too much changed. Has to run on the EDT.
+     */
+    public void renderChanges() {
+        boolean all;
+        int count;
+        synchronized (_world) {
+            Zoom zoom = _zoom;
+            DirtyCells changes = _world.getChanges();
+            // if the camera moves, everything on the screen moves
+            boolean moved = followPlayer(_world.getPlayerX(), _world.getPlayerY());
+            all = moved || changes.isAll() || changes.size() > MAX_DIRTY_CELLS;
+            count = all ? 0 : changes.size();
+            for (int i = 0; i < count; i++) {
+                // a pixel more on every side, the outlines stick out of the fields, and so does the player marker
+                _dirtyRects[4 * i] = toPixel(changes.getX(i), zoom.block(), zoom.fieldWidth()) + _offSetX - PLAYER_MARKER;
+                _dirtyRects[4 * i + 1] = toPixel(changes.getY(i), zoom.block(), zoom.fieldHeight()) + _offSetY - PLAYER_MARKER;
+                _dirtyRects[4 * i + 2] = zoom.fieldWidth() + 1 + 2 * PLAYER_MARKER;
+                _dirtyRects[4 * i + 3] = zoom.fieldHeight() + 1 + 2 * PLAYER_MARKER;
+            }
+            changes.clear();
+        }
+        if (!isShowing()) {
+            return;
+        }
+        if (all) {
+            repaint();
+            return;
+        }
+        // painted one by one, the repaint manager would merge them into one big rectangle
+        for (int i = 0; i < count; i++) {
+            paintImmediately(_dirtyRects[4 * i], _dirtyRects[4 * i + 1], _dirtyRects[4 * i + 2], _dirtyRects[4 * i + 3]);
+        }
+    }
+
+    /**
+     * Called by the world on the simulation thread, while it holds its lock. Everything, that is changed here,
+     * is only read by others while holding the same lock, or through {@link #_placement}.
+     */
     @Override
     public void newLevel(World world) {
         this.WIDTH = world.getWidth() * fieldDimension.width;
         this.HEIGHT = world.getHeight() * fieldDimension.height;
+        // the zoom stays, unless the new level is small enough to be seen closer
+        _zoom = _zooms.get(Math.min(_zoom.index(), maxZoom(world.getWidth(), world.getHeight())));
         calcOffSet();
-        drawBackGround();
+        PreparedBackGround prepared = _prepared;
+        _prepared = null;
+        if (prepared != null && prepared.level() != world.getLevel()) {
+            prepared = null;
+        }
+        Board board = prepared != null ? prepared.board() : Board.of(world.getLevel());
+        List<Zoom> zooms = _zooms;
+        _tiles.reset((zoom, tileX, tileY) -> renderTile(zooms.get(zoom), board, tileX, tileY));
+        _wantedCameraX = Integer.MIN_VALUE;
+        // if the tiles around the start were rendered in advance, they are just put into the cache
+        if (prepared != null && prepared.zoom() == _zoom.index()) {
+            for (PreparedTile tile : prepared.tiles()) {
+                _tiles.put(prepared.zoom(), tile.x(), tile.y(), tile.image());
+            }
+        }
         update(world);
+        forgetPreviousPositions(world);
+    }
+
+    /**
+     * Renders the tiles on the screen at the start of a level, that is not played yet, so switching to it
+     * later costs nothing. This may be called from any thread, it does not touch the current background.
+     * @param level the level, that will be played next
+     */
+    public void prepareLevel(Level level) {
+        if (screenSizeX <= 0 || screenSizeY <= 0) {
+            // the screen size is not known before the controller is set
+            return;
+        }
+        Zoom zoom = _zooms.get(Math.min(_zoom.index(), maxZoom(level.getLenX(), level.getLenY())));
+        Board board = Board.of(level);
+        // where the camera will be, when the level starts
+        Camera camera = new Camera(screenSizeX, screenSizeY, zoom.field());
+        camera.setLevel(zoom.blocks(level.getLenX()), zoom.blocks(level.getLenY()),
+                level.getStartX() / zoom.block(), level.getStartY() / zoom.block());
+        ArrayList<PreparedTile> tiles = new ArrayList<>();
+        int[] range = tileRange(zoom, camera, level.getLenX(), level.getLenY(), 0);
+        for (int y = range[1]; y <= range[3]; y++) {
+            for (int x = range[0]; x <= range[2]; x++) {
+                tiles.add(new PreparedTile(x, y, renderTile(zoom, board, x, y)));
+            }
+        }
+        _prepared = new PreparedBackGround(level, zoom.index(), board, tiles);
     }
 
-    private void paintTheFrame(Graphics2D g) {
-        for (int i = 0; i < _world.getWidth() + 2; i++) {
-            //BORDER TOP
-            drawWall(g, ((i - 1) * fieldDimension.width + _offSetX), (_offSetY - fieldDimension.height), fieldDimension.width, fieldDimension.height);
-            //BORDER BOTTOM
-            drawWall(g, ((i - 1) * fieldDimension.width + _offSetX), (_offSetY + (fieldDimension.height * (_world.getHeight()))), fieldDimension.width, fieldDimension.height);
+    /**
+     * Draws the part of the frame around the level, that is inside the given fields.
+     */
+    private static void paintTheFrame(Graphics2D g, Zoom zoom, int lenX, int lenY, int minX, int minY, int maxX, int maxY) {
+        SpriteAtlas atlas = zoom.atlas();
+        int fromX = Math.max(-1, minX);
+        int toX = Math.min(lenX, maxX);
+        //BORDER TOP
+        if (minY <= -1 && -1 <= maxY && fromX <= toX) {
+            atlas.drawWalls(g, fromX * zoom.fieldWidth(), -zoom.fieldHeight(), toX - fromX + 1);
+        }
+        //BORDER BOTTOM
+        if (minY <= lenY && lenY <= maxY && fromX <= toX) {
+            atlas.drawWalls(g, fromX * zoom.fieldWidth(), lenY * zoom.fieldHeight(), toX - fromX + 1);
         }
-        for (int i = 0; i < _world.getHeight(); i++) {
+        for (int i = Math.max(0, minY); i <= Math.min(lenY - 1, maxY); i++) {
             //BORDER LEFT
-            drawWall(g, _offSetX - fieldDimension.width, ((i * fieldDimension.height) + _offSetY), fieldDimension.width, fieldDimension.height);
+            if (minX <= -1 && -1 <= maxX) {
+                atlas.drawWalls(g, -zoom.fieldWidth(), i * zoom.fieldHeight(), 1);
+            }
             //BORDER RIGHT
-            drawWall(g, (_offSetX + (fieldDimension.width * _world.getWidth())), ((i * fieldDimension.height) + _offSetY), fieldDimension.width, fieldDimension.height);
+            if (minX <= lenX && lenX <= maxX) {
+                atlas.drawWalls(g, lenX * zoom.fieldWidth(), i * zoom.fieldHeight(), 1);
+            }
+        }
+    }
+
+    /**
+     * Draws the clipped part of the background tile by tile. A tile, that is not rendered yet, is a placeholder
+     * for now, the tile is drawn as soon as it is ready.
+     */
+    private void drawBackGround(Graphics g, Zoom zoom, Rectangle clip) {
+        int tileWidth = _tiles.getTileWidth();
+        int tileHeight = _tiles.getTileHeight();
+        int[] level = tileRange(zoom, null, _world.getWidth(), _world.getHeight(), 0);
+        int minX = Math.floorDiv(clip.x - _offSetX, tileWidth);
+        int minY = Math.floorDiv(clip.y - _offSetY, tileHeight);
+        int maxX = Math.floorDiv(clip.x + clip.width - 1 - _offSetX, tileWidth);
+        int maxY = Math.floorDiv(clip.y + clip.height - 1 - _offSetY, tileHeight);
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                int screenX = x * tileWidth + _offSetX;
+                int screenY = y * tileHeight + _offSetY;
+                if (x < level[0] || x > level[2] || y < level[1] || y > level[3]) {
+                    // nothing of the level in there
+                    g.setColor(Color.BLACK);
+                    g.fillRect(screenX, screenY, tileWidth, tileHeight);
+                    continue;
+                }
+                BufferedImage tile = _tiles.get(zoom.index(), x, y);
+                if (tile == null) {
+                    g.setColor(PLACEHOLDER);
+                    g.fillRect(screenX, screenY, tileWidth, tileHeight);
+                } else {
+                    g.drawImage(tile, screenX, screenY, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells the cache, which tiles are needed: the ones on the screen and one more on every side.
+     * Only if the camera moved, the tiles on the screen are the newest in the cache, so none of them gets lost.
+     */
+    private void wantTiles(Zoom zoom) {
+        if (_camera == null || (_camera.getX() == _wantedCameraX && _camera.getY() == _wantedCameraY
+                && zoom.index() == _wantedZoom)) {
+            return;
+        }
+        _wantedCameraX = _camera.getX();
+        _wantedCameraY = _camera.getY();
+        _wantedZoom = zoom.index();
+        int[] range = tileRange(zoom, _camera, _world.getWidth(), _world.getHeight(), 1);
+        _tiles.want(zoom.index(), range[0], range[1], range[2], range[3]);
+    }
+
+    /**
+     * The tiles, that the camera sees, and some more on every side, but only the ones with a part of the level
+     * or of its frame in them.
+     * @param camera the camera, or null for all tiles of the level
+     * @return the first and the last tile in x and y: minX, minY, maxX, maxY
+     */
+    private int[] tileRange(Zoom zoom, Camera camera, int lenX, int lenY, int margin) {
+        int tileWidth = _tiles.getTileWidth();
+        int tileHeight = _tiles.getTileHeight();
+        // the frame starts a field before the level, and the outline of the last one sticks out by a pixel
+        int levelMinX = Math.floorDiv(-zoom.fieldWidth(), tileWidth);
+        int levelMinY = Math.floorDiv(-zoom.fieldHeight(), tileHeight);
+        int levelMaxX = Math.floorDiv((zoom.blocks(lenX) + 1) * zoom.fieldWidth(), tileWidth);
+        int levelMaxY = Math.floorDiv((zoom.blocks(lenY) + 1) * zoom.fieldHeight(), tileHeight);
+        if (camera == null) {
+            return new int[]{levelMinX, levelMinY, levelMaxX, levelMaxY};
+        }
+        return new int[]{
+                Math.max(levelMinX, Math.floorDiv(camera.getX(), tileWidth) - margin),
+                Math.max(levelMinY, Math.floorDiv(camera.getY(), tileHeight) - margin),
+                Math.min(levelMaxX, Math.floorDiv(camera.getX() + camera.getViewWidth() - 1, tileWidth) + margin),
+                Math.min(levelMaxY, Math.floorDiv(camera.getY() + camera.getViewHeight() - 1, tileHeight) + margin)
+        };
+    }
+
+    /**
+     * @return enough tiles for the screen with a ring around it, twice, so going back and forth renders nothing again
+     */
+    private int tileCapacity() {
+        int columns = screenSizeX / _tiles.getTileWidth() + 4;
+        int rows = screenSizeY / _tiles.getTileHeight() + 4;
+        return 2 * columns * rows;
+    }
+
+    /**
+     * A tile is ready, the part of the screen it is on is painted again. Called on a worker thread.
+     */
+    private void tileReady(int zoom, int tileX, int tileY) {
+        Placement placement = _placement;
+        if (zoom != placement.zoom()) {
+            return;
         }
+        repaint(tileX * _tiles.getTileWidth() + placement.offSetX(), tileY * _tiles.getTileHeight() + placement.offSetY(),
+                _tiles.getTileWidth(), _tiles.getTileHeight());
+    }
+
+    private BufferedImage renderTile(Zoom zoom, Board board, int tileX, int tileY) {
+        int tileWidth = _tiles.getTileWidth();
+        int tileHeight = _tiles.getTileHeight();
+        if (zoom.atlas() == null) {
+            return renderCoarse(board, zoom, tileX * tileWidth, tileY * tileHeight, tileWidth, tileHeight);
+        }
+        return renderBackGround(board, zoom, tileX * tileWidth, tileY * tileHeight, tileWidth, tileHeight);
+    }
+
+    /**
+     * @return an opaque image in the format of the screen, so copying it to the screen needs no conversion
+     */
+    private BufferedImage createTileImage(int width, int height) {
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        return configuration != null
+                ? configuration.createCompatibleImage(width, height)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
     }
 
-    private void drawBackGround() {
-        backGround = new BufferedImage(screenSizeX, screenSizeY, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = backGround.createGraphics();
+    /**
+     * Renders the walls, the frame and the end field of a part of a level into a new image.
+     * Only the fields inside the part are looked at.
+     * Walls next to each other in a row are drawn with one blit out of the sprite atlas.
+     * It only reads the given values, so it can run on any thread.
+     * @param originX the pixel of the level, that is the left edge of the image
+     * @param originY the pixel of the level, that is the top edge of the image
+     */
+    private BufferedImage renderBackGround(Board board, Zoom zoom, int originX, int originY, int width, int height) {
+        SpriteAtlas atlas = zoom.atlas();
+        WallLayer walls = board.walls();
+        int lenX = board.lenX();
+        int lenY = board.lenY();
+        BufferedImage image = createTileImage(width, height);
+        Graphics2D g2d = image.createGraphics();
 
         //Paint Black BackGround
         g2d.setColor(Color.BLACK);
-        g2d.fillRect(0, 0, screenSizeX, screenSizeY);
-
-        //PaintWalls
-        for (Wall wall: _world.getWalls()){
-            drawWall(g2d, wall.x() * fieldDimension.width + _offSetX,
-                    wall.y() * fieldDimension.height + _offSetY,
-                    _wall.width,
-                    _wall.height);
+        g2d.fillRect(0, 0, width, height);
+
+        // from here on, everything is drawn in pixels of the level.
+        // A field more on the top and the left, its outline reaches into the image
+        g2d.translate(-originX, -originY);
+        int minX = Math.floorDiv(originX, zoom.fieldWidth()) - 1;
+        int minY = Math.floorDiv(originY, zoom.fieldHeight()) - 1;
+        int maxX = Math.floorDiv(originX + width, zoom.fieldWidth());
+        int maxY = Math.floorDiv(originY + height, zoom.fieldHeight());
+
+        //PaintWalls, run by run
+        for (int y = Math.max(0, minY); y <= Math.min(lenY - 1, maxY); y++) {
+            int x = Math.max(0, minX);
+            int lastX = Math.min(lenX - 1, maxX);
+            while (x <= lastX) {
+                if (!walls.isWall(x, y)) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x <= lastX && walls.isWall(x, y)) {
+                    x++;
+                }
+                atlas.drawWalls(g2d, start * zoom.fieldWidth(), y * zoom.fieldHeight(), x - start);
+            }
         }
 
         //paint the Frame
-        paintTheFrame(g2d);
+        paintTheFrame(g2d, zoom, lenX, lenY, minX, minY, maxX, maxY);
 
         //paint the End field
-        drawEndField(g2d, _world.getEndX() * fieldDimension.width + _offSetX, _world.getEndY() * fieldDimension.height + _offSetY, fieldDimension.width, fieldDimension.height);
+        atlas.draw(g2d, SpriteAtlas.END, board.endX() * zoom.fieldWidth(), board.endY() * zoom.fieldHeight());
 
         //dispose to save resources
         g2d.dispose();
+        return image;
     }
 
-    private void drawThePlayer(Graphics g) {
-        g.setColor(Color.WHITE);
-        g.fillRect(player.x + _offSetX, player.y + _offSetY, player.width, player.height);
-        g.setColor(Color.RED);
-        g.drawLine(player.x + _offSetX + (player.width/2),
-                player.y  + _offSetY + (player.height/2),
-                player.x + _offSetX + ((player.width + _world.getPlayerDirection().deltaX * fieldDimension.width)/2),
-                player.y  + _offSetY + ((player.height + _world.getPlayerDirection().deltaY * fieldDimension.height)/2));
+    /**
+     * Renders a part of a level, that is zoomed out too far for sprites. Every block of fields is a shade of grey,
+     * the more walls it has, the lighter. The counts come out of the wall pyramid, so a block costs the same,
+     * no matter how many fields it has.
+     * @param originX the pixel of the level, that is the left edge of the image
+     * @param originY the pixel of the level, that is the top edge of the image
+     */
+    private BufferedImage renderCoarse(Board board, Zoom zoom, int originX, int originY, int width, int height) {
+        WallPyramid pyramid = board.pyramid();
+        int block = zoom.block();
+        int fieldWidth = zoom.fieldWidth();
+        int fieldHeight = zoom.fieldHeight();
+        int blocksX = zoom.blocks(board.lenX());
+        int blocksY = zoom.blocks(board.lenY());
+        int endX = board.endX() / block;
+        int endY = board.endY() / block;
+        int wall = Color.LIGHT_GRAY.getRed();
+        int[] pixels = new int[width * height];
+        int minX = Math.floorDiv(originX, fieldWidth);
+        int minY = Math.floorDiv(originY, fieldHeight);
+        int maxX = Math.floorDiv(originX + width - 1, fieldWidth);
+        int maxY = Math.floorDiv(originY + height - 1, fieldHeight);
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                int color;
+                if (x == endX && y == endY) {
+                    color = Color.GREEN.getRGB();
+                } else if (x < -1 || y < -1 || x > blocksX || y > blocksY) {
+                    color = Color.BLACK.getRGB();
+                } else if (x == -1 || y == -1 || x == blocksX || y == blocksY) {
+                    color = Color.GRAY.getRGB();
+                } else {
+                    int fields = pyramid.getFields(block, x, y);
+                    int shade = (int) ((long) wall * pyramid.getCount(block, x, y) / fields);
+                    color = 0xFF000000 | shade << 16 | shade << 8 | shade;
+                }
+                int fromX = Math.max(0, x * fieldWidth - originX);
+                int toX = Math.min(width, (x + 1) * fieldWidth - originX);
+                int fromY = Math.max(0, y * fieldHeight - originY);
+                int toY = Math.min(height, (y + 1) * fieldHeight - originY);
+                for (int py = fromY; py < toY; py++) {
+                    for (int px = fromX; px < toX; px++) {
+                        pixels[py * width + px] = color;
+                    }
+                }
+            }
+        }
+        BufferedImage image = createTileImage(width, height);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+
+    /**
+     * What the background of a level is made of. It only holds things, that do not change while the level is played,
+     * so the tiles can be rendered on any thread.
+     */
+    private record Board(WallLayer walls, WallPyramid pyramid, int lenX, int lenY, int endX, int endY) {
+
+        static Board of(Level level) {
+            return new Board(level.getWalls(), new WallPyramid(level.getWalls()), level.getLenX(), level.getLenY(),
+                    level.getEndX(), level.getEndY());
+        }
     }
 
-    private void drawWall(Graphics2D g2d, int posX, int posY, int width, int height){
-        g2d.setColor(Color.LIGHT_GRAY);
-        g2d.fillRect(posX, posY, width, height);
-        g2d.setColor(Color.GRAY);
-        g2d.drawRect(posX, posY, width, height);
+    /**
+     * The tiles, that were rendered for a level in advance.
+     */
+    private record PreparedBackGround(Level level, int zoom, Board board, List<PreparedTile> tiles) {
     }
 
-    private void drawEndField(Graphics2D g2d, int posX, int posY, int width, int height){
-        g2d.setColor(Color.GREEN);
-        g2d.drawRect(posX, posY, width, height);
+    private record PreparedTile(int x, int y, BufferedImage image) {
     }
 
-    private void drawEnemies(Graphics g) {
-        for (Enemies e: _world.getEnemies()){
-            drawEnemy(g, e.getX() * fieldDimension.width + _offSetX, e.getY() * fieldDimension.height + _offSetY, fieldDimension.width, fieldDimension.height, e);
+    /**
+     * Draws the enemies, that are inside the clip. They are looked up in the enemy index, so a small clip
+     * does not have to go through all the enemies.
+     */
+    private void drawEnemies(Graphics g, Zoom zoom, Rectangle clip) {
+        int block = zoom.block();
+        // a field more on every side, the outlines stick out of the fields
+        int minX = Math.max(0, (Math.floorDiv(clip.x - _offSetX, zoom.fieldWidth()) - 1) * block);
+        int minY = Math.max(0, (Math.floorDiv(clip.y - _offSetY, zoom.fieldHeight()) - 1) * block);
+        int maxX = (int) Math.min(_world.getWidth() - 1,
+                (Math.floorDiv(clip.x + clip.width - _offSetX, zoom.fieldWidth()) + 1L) * block - 1);
+        int maxY = (int) Math.min(_world.getHeight() - 1,
+                (Math.floorDiv(clip.y + clip.height - _offSetY, zoom.fieldHeight()) + 1L) * block - 1);
+        EnemyIndex enemies = _world.getEnemyIndex();
+        enemies.forEachInRegion(minX, minY, maxX, maxY, (x, y, count) ->
+                drawEnemy(g, zoom, enemies.typeAt(x, y),
+                        toPixel(x, block, zoom.fieldWidth()) + _offSetX, toPixel(y, block, zoom.fieldHeight()) + _offSetY));
+    }
+
+    private static void drawEnemy(Graphics g, Zoom zoom, byte type, int x, int y) {
+        if (zoom.atlas() != null) {
+            zoom.atlas().draw(g, SpriteAtlas.enemy(type), x, y);
+            return;
         }
+        g.setColor(type == EnemyStore.TYPE_CHASER ? Color.ORANGE : Color.RED);
+        g.fillRect(x, y, zoom.fieldWidth(), zoom.fieldHeight());
     }
 
-    private void drawEnemy(Graphics g, int posX, int posY, int width, int height, Enemies e){
-        g.setColor(Color.RED);
-        g.drawRect(posX, posY, width, height);
+    private static void drawPlayer(Graphics g, Zoom zoom, Direction direction, int x, int y) {
+        if (zoom.atlas() != null) {
+            zoom.atlas().draw(g, SpriteAtlas.player(direction), x, y);
+            return;
+        }
+        g.setColor(Color.WHITE);
+        g.fillRect(x - PLAYER_MARKER, y - PLAYER_MARKER, zoom.fieldWidth() + 2 * PLAYER_MARKER, zoom.fieldHeight() + 2 * PLAYER_MARKER);
     }
 }
@@ -0,0 +1,31 @@
+package view;
+
+import java.awt.Dimension;
+
+import model.WorldSnapshot;
+
+/**
+ * A view, that is not called by the world itself, but gets snapshots of it on a thread of its own,
+ * see {@link ViewChannel}. It can take as long as it likes, the game does not wait for it,
+ * unless it was registered with {@link ViewChannel.Policy#BLOCK}.
+ */
+public interface SnapshotView {
+
+    /**
+     * Called with the snapshots of the world, in the order they were taken, but maybe not all of them.
+     * It is always called on the same thread.
+     *
+     * @param snapshot what the world looked like after a tick
+     */
+    void update(WorldSnapshot snapshot);
+
+    /**
+     * How much of the world around the player the view shows. The snapshots for a view, that only shows a part,
+     * only hold the enemies in that part, see {@link model.World#snapshot(int, int)}.
+     *
+     * @return the width and height of the part in fields, or null if the view needs the whole world
+     */
+    default Dimension getArea() {
+        return null;
+    }
+}
@@ -0,0 +1,124 @@
+package view;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import model.Direction;
+import model.Enemies.EnemyStore;
+
+/**
+ * All the pictures of the game, rendered once. Drawing a field is then one blit out of the atlas instead of
+ * setting colours and drawing shapes, and the images of the atlas are kept in video memory by Java2D.
+ * <p>
+ * Walls have their own opaque strip of {@link #STRIP_LENGTH} walls next to each other, so a whole run
+ * of walls in a row is a single blit, that needs no blending. The other sprites have transparent insides
+ * and share one image.
+ * Every sprite is one pixel bigger than a field, because the outlines stick out by one pixel, just like
+ * the shapes, that were drawn before.
+ */
+public class SpriteAtlas {
+
+    /** How many walls the strip holds. */
+    public static final int STRIP_LENGTH = 64;
+
+    public static final int END = 0;
+    public static final int RANDEMY = 1;
+    public static final int CHASER = 2;
+    /** The player, looking in the direction with the ordinal, that is added. */
+    public static final int PLAYER = 3;
+    private static final int SPRITES = PLAYER + Direction.values().length;
+
+    private final int _width;
+    private final int _height;
+    private final BufferedImage _walls;
+    private final BufferedImage _image;
+
+    /**
+     * @param field the size of a field in pixels
+     * @param configuration the screen to make the atlas for, or null if it is not known yet
+     */
+    public SpriteAtlas(Dimension field, GraphicsConfiguration configuration) {
+        _width = field.width;
+        _height = field.height;
+        _walls = configuration != null
+                ? configuration.createCompatibleImage(STRIP_LENGTH * _width + 1, _height + 1)
+                : new BufferedImage(STRIP_LENGTH * _width + 1, _height + 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = _walls.createGraphics();
+        // in the same order as the walls used to be drawn, so the outlines overlap the same way
+        for (int i = 0; i < STRIP_LENGTH; i++) {
+            g.setColor(Color.LIGHT_GRAY);
+            g.fillRect(i * _width, 0, _width, _height);
+            g.setColor(Color.GRAY);
+            g.drawRect(i * _width, 0, _width, _height);
+        }
+        g.dispose();
+
+        _image = configuration != null
+                ? configuration.createCompatibleImage(SPRITES * (_width + 1), _height + 1, Transparency.TRANSLUCENT)
+                : new BufferedImage(SPRITES * (_width + 1), _height + 1, BufferedImage.TYPE_INT_ARGB);
+        g = _image.createGraphics();
+        int y = 0;
+        g.setColor(Color.GREEN);
+        g.drawRect(spriteX(END), y, _width, _height);
+        g.setColor(Color.RED);
+        g.drawRect(spriteX(RANDEMY), y, _width, _height);
+        g.setColor(Color.ORANGE);
+        g.drawRect(spriteX(CHASER), y, _width, _height);
+        for (Direction direction : Direction.values()) {
+            int x = spriteX(PLAYER + direction.ordinal());
+            g.setColor(Color.WHITE);
+            g.fillRect(x, y, _width, _height);
+            g.setColor(Color.RED);
+            g.drawLine(x + _width / 2, y + _height / 2,
+                    x + (_width + direction.deltaX * _width) / 2, y + (_height + direction.deltaY * _height) / 2);
+        }
+        g.dispose();
+    }
+
+    /**
+     * @return the sprite of an enemy of the given type
+     */
+    public static int enemy(byte type) {
+        return type == EnemyStore.TYPE_CHASER ? CHASER : RANDEMY;
+    }
+
+    /**
+     * @return the sprite of the player looking in the given direction
+     */
+    public static int player(Direction direction) {
+        return PLAYER + direction.ordinal();
+    }
+
+    /**
+     * Draws a sprite with its top left corner at (x, y).
+     */
+    public void draw(Graphics g, int sprite, int x, int y) {
+        int sx = spriteX(sprite);
+        g.drawImage(_image, x, y, x + _width + 1, y + _height + 1, sx, 0, sx + _width + 1, _height + 1, null);
+    }
+
+    /**
+     * Draws a run of walls next to each other in a row, with as few blits as the strip allows.
+     * @param x the left of the first wall
+     * @param y the top of the walls
+     * @param count how many walls
+     */
+    public void drawWalls(Graphics g, int x, int y, int count) {
+        while (count > 0) {
+            int part = Math.min(count, STRIP_LENGTH);
+            int w = part * _width + 1;
+            g.drawImage(_walls, x, y, x + w, y + _height + 1, 0, 0, w, _height + 1, null);
+            x += part * _width;
+            count -= part;
+        }
+    }
+
+    private int spriteX(int sprite) {
+        return sprite * (_width + 1);
+    }
+}
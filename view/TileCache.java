@@ -0,0 +1,217 @@
+package view;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The background of a level cut into tiles of the same size, rendered in advance.
+ * Only a bounded number of tiles is kept, the ones used the longest time ago are thrown away first,
+ * so the memory stays the same no matter how big the level is.
+ * <p>
+ * A tile, that is missing, is rendered on a pool of worker threads, several at once. Until it is ready,
+ * {@link #get(int, int, int)} returns null and the view draws a placeholder. When it is ready, the listener is told,
+ * so the view can draw it.
+ * <p>
+ * Tiles are numbered like fields: tile (0, 0) has its top left corner on the top left corner of the level,
+ * tiles left of and above the level have negative numbers. Every zoom level has its own tiles, all of the
+ * same size in pixels, so a zoomed out tile shows more of the level.
+ */
+public class TileCache {
+
+    /**
+     * Renders a tile. It is called on the worker threads.
+     */
+    @FunctionalInterface
+    public interface TileRenderer {
+        BufferedImage render(int zoom, int tileX, int tileY);
+    }
+
+    /**
+     * Is told, that a tile is ready. It is called on the worker threads.
+     */
+    @FunctionalInterface
+    public interface TileListener {
+        void tileReady(int zoom, int tileX, int tileY);
+    }
+
+    private final int _tileWidth;
+    private final int _tileHeight;
+    private final TileListener _listener;
+    private final ExecutorService _workers;
+
+    /** The tiles, the last one used at the end. Only touched while holding the lock of the cache. */
+    private final LinkedHashMap<Long, BufferedImage> _tiles = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > _capacity;
+        }
+    };
+    private int _capacity;
+
+    /** The tiles, that are being rendered or wait for a worker. */
+    private final Set<Long> _pending = ConcurrentHashMap.newKeySet();
+
+    private volatile TileRenderer _renderer;
+    /** Counts up with every level, so tiles of the last level, that finish late, are dropped. */
+    private volatile int _generation;
+
+    /** The tiles, that were wanted the last time. Tiles, that are far off by the time a worker gets to them, are skipped. */
+    private volatile int _wantedZoom;
+    private volatile int _wantedMinX;
+    private volatile int _wantedMinY;
+    private volatile int _wantedMaxX = -1;
+    private volatile int _wantedMaxY = -1;
+
+    /**
+     * @param tileWidth the width of a tile in pixels
+     * @param tileHeight the height of a tile in pixels
+     * @param capacity how many tiles are kept at most
+     * @param listener is told about tiles, that are ready
+     */
+    public TileCache(int tileWidth, int tileHeight, int capacity, TileListener listener) {
+        _tileWidth = tileWidth;
+        _tileHeight = tileHeight;
+        _capacity = capacity;
+        _listener = listener;
+        AtomicInteger count = new AtomicInteger();
+        _workers = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+            Thread thread = new Thread(runnable, "tile-render-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getTileWidth() {
+        return _tileWidth;
+    }
+
+    public int getTileHeight() {
+        return _tileHeight;
+    }
+
+    /**
+     * @param capacity how many tiles are kept at most, e.g. when the screen got bigger
+     */
+    public synchronized void setCapacity(int capacity) {
+        _capacity = capacity;
+        while (_tiles.size() > _capacity) {
+            _tiles.remove(_tiles.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Throws away all tiles, e.g. for a new level.
+     * @param renderer renders the tiles from now on
+     */
+    public synchronized void reset(TileRenderer renderer) {
+        _generation++;
+        _renderer = renderer;
+        _tiles.clear();
+        _pending.clear();
+    }
+
+    /**
+     * @return the tile, or null if it is not rendered yet. Then it is rendered in the background
+     */
+    public BufferedImage get(int zoom, int tileX, int tileY) {
+        long key = key(zoom, tileX, tileY);
+        BufferedImage tile;
+        synchronized (this) {
+            tile = _tiles.get(key);
+        }
+        if (tile == null) {
+            request(zoom, tileX, tileY, key);
+        }
+        return tile;
+    }
+
+    /**
+     * Puts a tile, that was rendered somewhere else, e.g. in advance for the next level, into the cache.
+     */
+    public synchronized void put(int zoom, int tileX, int tileY, BufferedImage tile) {
+        _tiles.put(key(zoom, tileX, tileY), tile);
+    }
+
+    /**
+     * Tells, which tiles are needed right now. Missing ones are rendered, and tiles, that wait for a worker
+     * and are not in here anymore, are skipped.
+     */
+    public void want(int zoom, int minX, int minY, int maxX, int maxY) {
+        _wantedZoom = zoom;
+        _wantedMinX = minX;
+        _wantedMinY = minY;
+        _wantedMaxX = maxX;
+        _wantedMaxY = maxY;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                long key = key(zoom, x, y);
+                boolean cached;
+                synchronized (this) {
+                    // no get, that would count as a use
+                    cached = _tiles.containsKey(key);
+                }
+                if (!cached) {
+                    request(zoom, x, y, key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the workers.
+     */
+    public void shutdown() {
+        _workers.shutdownNow();
+    }
+
+    private void request(int zoom, int tileX, int tileY, long key) {
+        if (_renderer == null || !_pending.add(key)) {
+            return;
+        }
+        int generation = _generation;
+        _workers.execute(() -> {
+            if (generation != _generation) {
+                return;
+            }
+            if (zoom != _wantedZoom
+                    || tileX < _wantedMinX || tileX > _wantedMaxX || tileY < _wantedMinY || tileY > _wantedMaxY) {
+                // the camera moved on, or zoomed
+                _pending.remove(key);
+                return;
+            }
+            BufferedImage tile = null;
+            try {
+                tile = _renderer.render(zoom, tileX, tileY);
+            } finally {
+                if (tile == null) {
+                    // the renderer failed, the tile can be asked for again
+                    _pending.remove(key);
+                }
+            }
+            if (tile == null) {
+                return;
+            }
+            synchronized (this) {
+                if (generation != _generation) {
+                    return;
+                }
+                _tiles.put(key, tile);
+                _pending.remove(key);
+            }
+            _listener.tileReady(zoom, tileX, tileY);
+        });
+    }
+
+    /**
+     * 6 bits for the zoom and 29 bits for each of the coordinates, that is plenty for any level.
+     */
+    private static long key(int zoom, int tileX, int tileY) {
+        return ((long) zoom << 58) | ((tileX & 0x1FFFFFFFL) << 29) | (tileY & 0x1FFFFFFFL);
+    }
+}
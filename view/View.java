@@ -5,6 +5,9 @@ import model.World;
 /**
  * Classes that want to display the {@link World} must implement this interface
  * to be notified when the world updates.
+ * <p>
+ * The world calls them right away on the game thread, and waits for them, so they have to be quick.
+ * Slow views should be a {@link SnapshotView} instead.
  */
 public interface View {
 
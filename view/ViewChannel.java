@@ -0,0 +1,209 @@
+package view;
+
+import java.awt.Dimension;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import model.WorldSnapshot;
+
+/**
+ * Brings the snapshots of the world to a {@link SnapshotView}. The world hands them in on the game thread,
+ * the view gets them on a thread of its own. In between they wait in a bounded ring without locks:
+ * the game thread is the only one writing, the view thread the only one reading.
+ * <p>
+ * What happens when the view is slower than the game, is up to the {@link Policy}.
+ */
+public class ViewChannel {
+
+    /**
+     * What to do with snapshots, that a slow view can not take yet.
+     */
+    public enum Policy {
+        /** Snapshots, that do not fit into the ring anymore, are thrown away. The view sees every one, that fits. */
+        DROP,
+        /** Only the newest snapshot waits, the view always gets the latest state and skips the ones in between. */
+        COALESCE,
+        /** The game waits until there is room in the ring. The view sees every snapshot, the game runs at its pace. */
+        BLOCK
+    }
+
+    /** How many snapshots wait at most, if nothing else was said. */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final SnapshotView _view;
+    private final Policy _policy;
+    private final ExecutorService _executor;
+
+    private final AtomicReferenceArray<WorldSnapshot> _ring;
+    private final int _mask;
+    /** The next snapshot the view takes. Only written by the view thread. */
+    private final AtomicLong _head = new AtomicLong();
+    /** Where the next snapshot goes. Only written by the game thread. */
+    private final AtomicLong _tail = new AtomicLong();
+    /** The one snapshot, that waits with {@link Policy#COALESCE}. */
+    private final AtomicReference<WorldSnapshot> _latest = new AtomicReference<>();
+
+    /** Set while the view thread is told to drain, so it is not told twice. */
+    private final AtomicBoolean _scheduled = new AtomicBoolean();
+
+    private final AtomicLong _skipped = new AtomicLong();
+
+    /**
+     * @param view the view, that gets the snapshots
+     * @param policy what happens when the view is too slow
+     * @param capacity how many snapshots can wait, it is rounded up to a power of two
+     */
+    public ViewChannel(SnapshotView view, Policy policy, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity has to be positive: " + capacity);
+        }
+        _view = view;
+        _policy = policy;
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        _ring = new AtomicReferenceArray<>(Math.max(1, size));
+        _mask = _ring.length() - 1;
+        String name = "view-" + view.getClass().getSimpleName();
+        _executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ViewChannel(SnapshotView view, Policy policy) {
+        this(view, policy, DEFAULT_CAPACITY);
+    }
+
+    public Policy getPolicy() {
+        return _policy;
+    }
+
+    /**
+     * @return the part of the world around the player, the view shows, or null for the whole world,
+     * see {@link SnapshotView#getArea()}
+     */
+    public Dimension getArea() {
+        return _view.getArea();
+    }
+
+    /**
+     * Hands a snapshot to the view. Only the game thread may call this.
+     * It only waits, if the policy is {@link Policy#BLOCK} and the ring is full.
+     */
+    public void offer(WorldSnapshot snapshot) {
+        if (_executor.isShutdown()) {
+            return;
+        }
+        switch (_policy) {
+            case COALESCE -> {
+                if (_latest.getAndSet(snapshot) != null) {
+                    _skipped.incrementAndGet();
+                }
+            }
+            case DROP -> {
+                if (!push(snapshot)) {
+                    _skipped.incrementAndGet();
+                }
+            }
+            case BLOCK -> {
+                while (!push(snapshot)) {
+                    schedule();
+                    LockSupport.parkNanos(50_000);
+                    if (_executor.isShutdown()) {
+                        return;
+                    }
+                }
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * @return how many snapshots the view never got, because it was too slow
+     */
+    public long getSkipped() {
+        return _skipped.get();
+    }
+
+    /**
+     * @return how many snapshots wait for the view right now
+     */
+    public int getWaiting() {
+        if (_policy == Policy.COALESCE) {
+            return _latest.get() != null ? 1 : 0;
+        }
+        return (int) (_tail.get() - _head.get());
+    }
+
+    /**
+     * Stops the view thread. Snapshots, that still wait, are not handed over anymore.
+     */
+    public void close() {
+        _executor.shutdownNow();
+    }
+
+    private boolean push(WorldSnapshot snapshot) {
+        long tail = _tail.get();
+        if (tail - _head.get() == _ring.length()) {
+            return false;
+        }
+        _ring.lazySet((int) (tail & _mask), snapshot);
+        // the snapshot is in the ring, before the view can see the new tail
+        _tail.lazySet(tail + 1);
+        return true;
+    }
+
+    private WorldSnapshot poll() {
+        if (_policy == Policy.COALESCE) {
+            return _latest.getAndSet(null);
+        }
+        long head = _head.get();
+        if (head == _tail.get()) {
+            return null;
+        }
+        int slot = (int) (head & _mask);
+        WorldSnapshot snapshot = _ring.get(slot);
+        _ring.lazySet(slot, null);
+        _head.lazySet(head + 1);
+        return snapshot;
+    }
+
+    private boolean isEmpty() {
+        return _policy == Policy.COALESCE ? _latest.get() == null : _head.get() == _tail.get();
+    }
+
+    private void schedule() {
+        if (_scheduled.compareAndSet(false, true)) {
+            try {
+                _executor.execute(this::drain);
+            } catch (RuntimeException e) {
+                // closed in the meantime
+                _scheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            WorldSnapshot snapshot;
+            while ((snapshot = poll()) != null) {
+                try {
+                    _view.update(snapshot);
+                } catch (RuntimeException e) {
+                    // one broken frame must not stop the view for good
+                    System.err.println("View " + _view.getClass().getSimpleName() + " failed: " + e);
+                }
+            }
+            _scheduled.set(false);
+            // a snapshot, that came after the last poll, but before the flag was cleared, would wait forever
+            if (isEmpty() || !_scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+}